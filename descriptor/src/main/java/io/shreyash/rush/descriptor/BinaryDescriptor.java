@@ -0,0 +1,261 @@
+package io.shreyash.rush.descriptor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads a binary descriptor ({@code components.bin}), the compact and indexed counterpart of
+ * components.json written by the Rush annotation processor. The blocks of a component, or a single
+ * block by name, can be looked up without reading anything else, let alone parsing JSON.
+ *
+ * <p>All integers are big-endian and 4 bytes long, unless stated otherwise. Strings are referred to
+ * by their index in the string table, and the index {@link #NONE} stands for no string. The file is
+ * laid out as follows:
+ *
+ * <ul>
+ *   <li>Header ({@link #HEADER_SIZE} bytes): the magic number, the format version (2 bytes), 2
+ *   reserved bytes, the number of components, the offset of the component table, the number of
+ *   strings and the offset of the string table.</li>
+ *   <li>Component table: a record of {@link #COMPONENT_SIZE} bytes per component, in the order of
+ *   components.json. It holds the name, the type (fully qualified class name), and for each
+ *   {@link Section}, the offset and the number of its block records.</li>
+ *   <li>Block records ({@link #BLOCK_SIZE} bytes each): the name, the type (the return type of
+ *   methods, the type of block properties and the editor type of designer properties), the flags,
+ *   and the offset and number of its parameter records. The records of a section are sorted by
+ *   name.</li>
+ *   <li>Parameter records ({@link #PARAM_SIZE} bytes each): the name and the type.</li>
+ *   <li>String table: the offsets (relative to the end of the offsets) of all the strings plus one
+ *   for the end of the last one, followed by the strings themselves, in UTF-8.</li>
+ * </ul>
+ */
+public final class BinaryDescriptor {
+    /** "RSHD" */
+    public static final int MAGIC = 0x52534844;
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 24;
+    public static final int COMPONENT_SIZE = 8 + 4 * 8;
+    public static final int BLOCK_SIZE = 20;
+    public static final int PARAM_SIZE = 8;
+
+    public static final int NONE = -1;
+
+    public static final int FLAG_DEPRECATED = 1;
+    public static final int ACCESS_TYPE_SHIFT = 1;
+    public static final int ACCESS_TYPE_MASK = 7;
+
+    /**
+     * The access types of block properties, as they appear in the {@code rw} field of
+     * components.json, indexed by their code. Code 0 stands for no access type.
+     */
+    public static final List<String> ACCESS_TYPES = Collections.unmodifiableList(
+        Arrays.asList(null, "read-only", "write-only", "read-write", "invisible"));
+
+    /** The sections of blocks of a component, in the order they are stored in. */
+    public enum Section { EVENTS, METHODS, BLOCK_PROPERTIES, PROPERTIES }
+
+    private final ByteBuffer buffer;
+    private final int componentCount;
+    private final int componentTableOffset;
+    private final int stringCount;
+    private final int stringsOffset;
+    private final int stringDataOffset;
+
+    public BinaryDescriptor(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a binary descriptor.");
+        }
+        int version = buffer.getShort(4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary descriptor version: " + version);
+        }
+
+        componentCount = buffer.getInt(8);
+        componentTableOffset = buffer.getInt(12);
+        stringCount = buffer.getInt(16);
+        stringsOffset = buffer.getInt(20);
+        stringDataOffset = stringsOffset + (stringCount + 1) * 4;
+    }
+
+    /** Opens the binary descriptor {@code file} by mapping it into memory. */
+    public static BinaryDescriptor open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new BinaryDescriptor(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /** @return The number of components in this descriptor. */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /** @return The component at {@code index} of the component table. */
+    public Component component(int index) {
+        if (index < 0 || index >= componentCount) {
+            throw new IndexOutOfBoundsException("Component " + index);
+        }
+        return new Component(componentTableOffset + index * COMPONENT_SIZE);
+    }
+
+    /** @return The component whose type (fully qualified class name) is {@code type}, or null. */
+    public Component componentOfType(String type) {
+        for (int i = 0; i < componentCount; i++) {
+            Component component = component(i);
+            if (component.getType().equals(type)) {
+                return component;
+            }
+        }
+        return null;
+    }
+
+    /** @return The string at {@code index} of the string table, or null for {@link #NONE}. */
+    private String string(int index) {
+        if (index == NONE) {
+            return null;
+        }
+        if (index < 0 || index >= stringCount) {
+            throw new IndexOutOfBoundsException("String " + index);
+        }
+
+        int start = stringDataOffset + buffer.getInt(stringsOffset + index * 4);
+        int end = stringDataOffset + buffer.getInt(stringsOffset + (index + 1) * 4);
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public final class Component {
+        private final int offset;
+
+        private Component(int offset) {
+            this.offset = offset;
+        }
+
+        public String getName() {
+            return string(buffer.getInt(offset));
+        }
+
+        public String getType() {
+            return string(buffer.getInt(offset + 4));
+        }
+
+        /** @return The number of blocks in {@code section}. */
+        public int blockCount(Section section) {
+            return buffer.getInt(sectionOffset(section) + 4);
+        }
+
+        /** @return All the blocks of {@code section}, sorted by name. */
+        public List<Block> blocks(Section section) {
+            int start = buffer.getInt(sectionOffset(section));
+            int count = blockCount(section);
+            List<Block> blocks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                blocks.add(new Block(start + i * BLOCK_SIZE));
+            }
+            return blocks;
+        }
+
+        /**
+         * @return The block of {@code section} named {@code name}, found by binary search, or null
+         * if there is none. If several blocks share the name (for eg., the getter and setter of a
+         * property), any one of them is returned.
+         */
+        public Block block(Section section, String name) {
+            int start = buffer.getInt(sectionOffset(section));
+            int low = 0;
+            int high = blockCount(section) - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                Block block = new Block(start + mid * BLOCK_SIZE);
+                int cmp = block.getName().compareTo(name);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return block;
+                }
+            }
+            return null;
+        }
+
+        private int sectionOffset(Section section) {
+            return offset + 8 + section.ordinal() * 8;
+        }
+    }
+
+    public final class Block {
+        private final int offset;
+
+        private Block(int offset) {
+            this.offset = offset;
+        }
+
+        public String getName() {
+            return string(buffer.getInt(offset));
+        }
+
+        /**
+         * @return The return type of methods, the type of block properties or the editor type of
+         * designer properties. Null for events.
+         */
+        public String getType() {
+            return string(buffer.getInt(offset + 4));
+        }
+
+        public boolean isDeprecated() {
+            return (flags() & FLAG_DEPRECATED) != 0;
+        }
+
+        /** @return The access type of a block property (see {@link #ACCESS_TYPES}), or null. */
+        public String getAccessType() {
+            int code = (flags() >> ACCESS_TYPE_SHIFT) & ACCESS_TYPE_MASK;
+            return code < ACCESS_TYPES.size() ? ACCESS_TYPES.get(code) : null;
+        }
+
+        /** @return The parameters of this block. */
+        public List<Param> getParams() {
+            int start = buffer.getInt(offset + 12);
+            int count = buffer.getInt(offset + 16);
+            List<Param> params = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int param = start + i * PARAM_SIZE;
+                params.add(new Param(string(buffer.getInt(param)), string(buffer.getInt(param + 4))));
+            }
+            return params;
+        }
+
+        private int flags() {
+            return buffer.getInt(offset + 8);
+        }
+    }
+
+    public static final class Param {
+        private final String name;
+        private final String type;
+
+        private Param(String name, String type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package io.shreyash.rush.processor.benchmark
+
+import io.shreyash.rush.processor.testing.Corpus
+import io.shreyash.rush.processor.testing.CorpusGenerator
+import io.shreyash.rush.processor.testing.CorpusSpec
+import io.shreyash.rush.processor.testing.ProcessorHarness
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the memory the processor allocates per run over corpora with many blocks, most of them
+ * with doc comments and property getter/setter pairs, whose attributes (description, YAIL types,
+ * helpers, deprecation) are read by both the checks and the JSON building. Run with the GC
+ * profiler, `./gradlew :processor:jmh -PjmhIncludes=BlockAllocationBenchmark -PjmhProfilers=gc`,
+ * and compare `gc.alloc.rate.norm`, the bytes allocated per run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+open class BlockAllocationBenchmark {
+
+    /** The number of blocks in each of the 10 extension classes. */
+    @Param("100", "500")
+    @JvmField
+    var blocks = 0
+
+    private lateinit var corpus: Corpus
+
+    @Setup(Level.Trial)
+    fun generate() {
+        val spec = CorpusSpec(extensions = 10, blocksPerExtension = blocks, optionLists = 10)
+        corpus = CorpusGenerator.generate(spec, Files.createTempDirectory("rush-benchmark"))
+    }
+
+    @TearDown(Level.Trial)
+    fun delete() = CorpusGenerator.delete(corpus.root)
+
+    @Benchmark
+    fun process(): Boolean {
+        val result = ProcessorHarness.run(corpus)
+        check(result.success) { result.diagnostics }
+        return result.success
+    }
+}
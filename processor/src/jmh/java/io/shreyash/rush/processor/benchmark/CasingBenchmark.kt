@@ -0,0 +1,67 @@
+package io.shreyash.rush.processor.benchmark
+
+import io.shreyash.rush.processor.util.isCamelCase
+import io.shreyash.rush.processor.util.isPascalCase
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+import java.util.regex.Pattern
+
+/**
+ * Compares the casing scanners with the regexes they replaced, both as they used to be called
+ * (compiled on every call) and precompiled. Every invocation checks a mix of the names a typical
+ * extension declares: blocks, parameters, and a few that fail the checks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+open class CasingBenchmark {
+    private val names = arrayOf(
+        "DoSomething", "ValueChanged", "BackgroundColor", "GotText", "HttpRequest2", "Base64Encode",
+        "fooBar", "text", "responseCode", "x", "url", "thisIsAVeryLongParameterName",
+        "not_camel", "lowerStart", "With Space", "123", "",
+    )
+
+    @Benchmark
+    fun scanner(blackhole: Blackhole) {
+        for (name in names) {
+            blackhole.consume(isPascalCase(name))
+            blackhole.consume(isCamelCase(name))
+        }
+    }
+
+    @Benchmark
+    fun regexCompiledPerCall(blackhole: Blackhole) {
+        for (name in names) {
+            blackhole.consume(Pattern.compile(PASCAL).matcher(name).find())
+            blackhole.consume(Pattern.compile(CAMEL).matcher(name).find())
+        }
+    }
+
+    @Benchmark
+    fun regexPrecompiled(blackhole: Blackhole) {
+        for (name in names) {
+            blackhole.consume(pascalPattern.matcher(name).find())
+            blackhole.consume(camelPattern.matcher(name).find())
+        }
+    }
+
+    private companion object {
+        const val CAMEL = "^[a-z]([A-Z0-9]*[a-z][a-z0-9]*[A-Z]|[a-z0-9]*[A-Z][A-Z0-9]*[a-z])?[A-Za-z0-9]*$"
+        const val PASCAL = "^[A-Z]([A-Z0-9]*[a-z][a-z0-9]*[A-Z]|[a-z0-9]*[A-Z][A-Z0-9]*[a-z])?[A-Za-z0-9]*$"
+
+        val camelPattern: Pattern = Pattern.compile(CAMEL)
+        val pascalPattern: Pattern = Pattern.compile(PASCAL)
+    }
+}
@@ -0,0 +1,128 @@
+package io.shreyash.rush.processor.benchmark
+
+import io.shreyash.rush.processor.ProcessorOptions
+import io.shreyash.rush.processor.daemon.ProcessorDaemon
+import io.shreyash.rush.processor.testing.Corpus
+import io.shreyash.rush.processor.testing.CorpusGenerator
+import io.shreyash.rush.processor.testing.CorpusSpec
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import shaded.org.json.JSONArray
+import shaded.org.json.JSONObject
+import java.io.BufferedReader
+import java.io.PrintStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares a build on a cold [ProcessorDaemon], started for that build only (as a build without the
+ * daemon would run javac in a new JVM), with a build on a warm one, that already served builds of
+ * the same project. Both daemons are separate processes fed with the same compile request, over 10
+ * extension classes of 100 blocks each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+open class DaemonBenchmark {
+
+    @Param("cold", "warm")
+    @JvmField
+    var daemon = ""
+
+    private lateinit var corpus: Corpus
+    private lateinit var classesDir: Path
+    private lateinit var request: String
+
+    /** The warm daemon, and its stdin and stdout. */
+    private var process: Process? = null
+    private lateinit var requests: PrintStream
+    private lateinit var responses: BufferedReader
+
+    @Setup(Level.Trial)
+    fun start() {
+        val spec = CorpusSpec(extensions = 10, blocksPerExtension = 100)
+        corpus = CorpusGenerator.generate(spec, Files.createTempDirectory("rush-benchmark"))
+        classesDir = Files.createTempDirectory("rush-benchmark-classes")
+        request = JSONObject()
+            .put("type", "compile")
+            .put(
+                "options", JSONArray(
+                    listOf(
+                        "-proc:only",
+                        "-classpath", System.getProperty("java.class.path"),
+                        "-d", classesDir.toString(),
+                        "-A${ProcessorOptions.PROJECT_ROOT}=${corpus.root.toAbsolutePath()}",
+                    )
+                )
+            )
+            .put("sources", JSONArray(corpus.writeSources().map { it.toString() }))
+            .toString()
+
+        if (daemon == "warm") {
+            val warm = startDaemon()
+            requests = PrintStream(warm.outputStream, true, "UTF-8")
+            responses = warm.inputStream.bufferedReader(Charsets.UTF_8)
+            process = warm
+        }
+    }
+
+    @TearDown(Level.Trial)
+    fun stop() {
+        process?.let {
+            requests.println(SHUTDOWN)
+            it.waitFor()
+        }
+        CorpusGenerator.delete(corpus.root)
+        CorpusGenerator.delete(classesDir)
+    }
+
+    @Benchmark
+    fun build(): Boolean {
+        if (daemon == "warm") {
+            requests.println(request)
+            return check(responses.readLine())
+        }
+
+        val cold = startDaemon()
+        PrintStream(cold.outputStream, true, "UTF-8").use {
+            it.println(request)
+            it.println(SHUTDOWN)
+        }
+        val response = cold.inputStream.bufferedReader(Charsets.UTF_8).use { it.readLine() }
+        cold.waitFor()
+        return check(response)
+    }
+
+    private fun startDaemon(): Process {
+        val java = Paths.get(System.getProperty("java.home"), "bin", "java").toString()
+        return ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), ProcessorDaemon::class.java.name)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start()
+    }
+
+    private fun check(response: String?): Boolean {
+        val json = JSONObject(checkNotNull(response) { "The daemon exited without a response." })
+        check(json.getBoolean("success")) { json.getString("output") }
+        return true
+    }
+
+    private companion object {
+        const val SHUTDOWN = "{\"type\": \"shutdown\"}"
+    }
+}
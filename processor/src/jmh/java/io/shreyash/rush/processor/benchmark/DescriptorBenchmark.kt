@@ -0,0 +1,173 @@
+package io.shreyash.rush.processor.benchmark
+
+import com.google.appinventor.components.annotations.ExtensionComponent
+import io.shreyash.rush.descriptor.BinaryDescriptor
+import io.shreyash.rush.processor.BinaryDescriptorWriter
+import io.shreyash.rush.processor.DescriptorWriter
+import io.shreyash.rush.processor.model.Extension
+import io.shreyash.rush.processor.testing.CorpusGenerator
+import io.shreyash.rush.processor.testing.CorpusSpec
+import io.shreyash.rush.processor.testing.ProcessorHarness
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import org.openjdk.jmh.infra.Blackhole
+import shaded.org.json.JSONArray
+import shaded.org.json.JSONObject
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit
+import kotlin.io.path.readText
+
+/**
+ * Compares `components.bin` ([BinaryDescriptor]) with `components.json` (parsed with [JSONArray]),
+ * for looking up a single block, reading every block, and writing the whole descriptor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+open class DescriptorBenchmark {
+
+    /** The number of extension classes, of 100 blocks each. */
+    @Param("1", "10", "100")
+    @JvmField
+    var classes = 0
+
+    private lateinit var root: Path
+    private lateinit var binaryFile: Path
+    private lateinit var jsonFile: Path
+    private lateinit var extensions: List<Extension>
+
+    /** The type of the last extension, and the name of one of its methods. */
+    private lateinit var type: String
+    private lateinit var method: String
+
+    @Setup(Level.Trial)
+    fun generate() {
+        root = Files.createTempDirectory("rush-benchmark")
+        val corpus = CorpusGenerator.generate(CorpusSpec(extensions = classes, blocksPerExtension = 100), root)
+        val result = ProcessorHarness.run(corpus)
+        check(result.success) { result.diagnostics }
+        binaryFile = result.rawDir.resolve("components.bin")
+        jsonFile = result.rawDir.resolve("components.json")
+
+        val components = JSONArray(jsonFile.readText())
+        extensions = (0 until components.length()).map { i ->
+            val component = components.getJSONObject(i)
+            Extension(
+                ExtensionComponent(name = component.getString("name"), description = "", icon = ""),
+                component.getString("type"),
+                component.getJSONArray("events").objects(),
+                component.getJSONArray("methods").objects(),
+                component.getJSONArray("blockProperties").objects(),
+                component.getJSONArray("properties").objects(),
+            )
+        }
+        type = extensions.last().fqcn
+        method = extensions.last().functions.last().getString("name")
+    }
+
+    @TearDown(Level.Trial)
+    fun delete() = CorpusGenerator.delete(root)
+
+    @Benchmark
+    fun lookUpBinary(): Int {
+        val component = BinaryDescriptor.open(binaryFile).componentOfType(type)!!
+        return component.block(BinaryDescriptor.Section.METHODS, method)!!.params.size
+    }
+
+    @Benchmark
+    fun lookUpJson(): Int {
+        val components = JSONArray(jsonFile.readText())
+        for (i in 0 until components.length()) {
+            val component = components.getJSONObject(i)
+            if (component.getString("type") != type) continue
+
+            val methods = component.getJSONArray("methods")
+            for (j in 0 until methods.length()) {
+                val block = methods.getJSONObject(j)
+                if (block.getString("name") == method) return block.getJSONArray("params").length()
+            }
+        }
+        throw IllegalStateException("$type.$method not found")
+    }
+
+    @Benchmark
+    fun readAllBinary(blackhole: Blackhole) {
+        val descriptor = BinaryDescriptor.open(binaryFile)
+        for (i in 0 until descriptor.componentCount) {
+            val component = descriptor.component(i)
+            for (section in BinaryDescriptor.Section.values()) {
+                for (block in component.blocks(section)) {
+                    blackhole.consume(block.name)
+                    blackhole.consume(block.type)
+                    blackhole.consume(block.params)
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    fun readAllJson(blackhole: Blackhole) {
+        val components = JSONArray(jsonFile.readText())
+        for (i in 0 until components.length()) {
+            val component = components.getJSONObject(i)
+            for (section in SECTIONS) {
+                val blocks = component.getJSONArray(section)
+                for (j in 0 until blocks.length()) {
+                    val block = blocks.getJSONObject(j)
+                    blackhole.consume(block.getString("name"))
+                    blackhole.consume(block.optJSONArray("params"))
+                }
+            }
+        }
+    }
+
+    // Both writers leave an identical file alone, so the previous one is deleted first.
+
+    @Benchmark
+    fun writeBinary() {
+        Files.deleteIfExists(binaryFile)
+        BinaryDescriptorWriter(extensions).write(binaryFile)
+    }
+
+    @Benchmark
+    fun writeJson() {
+        Files.deleteIfExists(jsonFile)
+        DescriptorWriter(jsonFile).use { writer ->
+            writer.beginArray()
+            for (ext in extensions) {
+                writer.writeObject(
+                    listOf(
+                        "name" to ext.extensionComponent.name,
+                        "type" to ext.fqcn,
+                        "events" to ext.events,
+                        "methods" to ext.functions,
+                        "blockProperties" to ext.properties,
+                        "properties" to ext.designerProperties,
+                    )
+                )
+            }
+            writer.endArray()
+        }
+    }
+
+    private fun JSONArray.objects(): List<JSONObject> = (0 until length()).map { getJSONObject(it) }
+
+    private companion object {
+        val SECTIONS = listOf("events", "methods", "blockProperties", "properties")
+    }
+}
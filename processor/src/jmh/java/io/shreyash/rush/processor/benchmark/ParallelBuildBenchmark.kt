@@ -0,0 +1,58 @@
+package io.shreyash.rush.processor.benchmark
+
+import io.shreyash.rush.processor.ProcessorOptions
+import io.shreyash.rush.processor.testing.Corpus
+import io.shreyash.rush.processor.testing.CorpusGenerator
+import io.shreyash.rush.processor.testing.CorpusSpec
+import io.shreyash.rush.processor.testing.ProcessorHarness
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares a parallel build ([ProcessorOptions.parallel]) with a sequential one, over 50 extension
+ * classes of 100 blocks each (5,000 blocks in all), spread over 5 packages so that the info files
+ * are generated in parallel too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+open class ParallelBuildBenchmark {
+
+    @Param("false", "true")
+    @JvmField
+    var parallel = false
+
+    private lateinit var corpus: Corpus
+
+    @Setup(Level.Trial)
+    fun generate() {
+        val spec = CorpusSpec(extensions = 50, blocksPerExtension = 100, packages = 5)
+        corpus = CorpusGenerator.generate(spec, Files.createTempDirectory("rush-benchmark"))
+    }
+
+    @TearDown(Level.Trial)
+    fun delete() = CorpusGenerator.delete(corpus.root)
+
+    @Benchmark
+    fun build(): Boolean {
+        val result = ProcessorHarness.run(corpus, "${ProcessorOptions.PARALLEL}=$parallel")
+        check(result.success) { result.diagnostics }
+        return result.success
+    }
+}
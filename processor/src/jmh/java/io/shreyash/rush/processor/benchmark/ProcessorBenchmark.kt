@@ -0,0 +1,99 @@
+package io.shreyash.rush.processor.benchmark
+
+import io.shreyash.rush.processor.testing.Corpus
+import io.shreyash.rush.processor.testing.CorpusGenerator
+import io.shreyash.rush.processor.testing.CorpusSpec
+import io.shreyash.rush.processor.testing.ProcessorHarness
+import org.openjdk.jmh.annotations.AuxCounters
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryType
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the throughput (processor runs per minute) and the peak heap usage of the processor over
+ * corpora of 1, 10 and 100 extension classes. Run with `./gradlew :processor:jmh`, the results are
+ * written to `processor/build/results/jmh/results.json`.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+open class ProcessorBenchmark {
+
+    @State(Scope.Benchmark)
+    open class CorpusState {
+        /** The number of extension classes. */
+        @Param("1", "10", "100")
+        @JvmField
+        var classes = 0
+
+        /** The number of blocks in each class. */
+        @Param("50")
+        @JvmField
+        var blocks = 0
+
+        lateinit var corpus: Corpus
+
+        @Setup(Level.Trial)
+        fun generate() {
+            val spec = CorpusSpec(
+                extensions = classes,
+                blocksPerExtension = blocks,
+                optionLists = 10,
+                permissions = 200,
+                appElements = 100,
+            )
+            corpus = CorpusGenerator.generate(spec, Files.createTempDirectory("rush-benchmark"))
+        }
+
+        @TearDown(Level.Trial)
+        fun delete() = CorpusGenerator.delete(corpus.root)
+    }
+
+    /**
+     * Reports the peak heap usage of each iteration, in megabytes, next to the throughput. The peak
+     * is taken from the heap memory pools, so it covers the garbage that was collected as well.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    open class PeakHeap {
+        @JvmField
+        var peakHeapMb = 0.0
+
+        @Setup(Level.Iteration)
+        fun reset() {
+            peakHeapMb = 0.0
+            heapPools().forEach { it.resetPeakUsage() }
+        }
+
+        fun record() {
+            val peak = heapPools().sumOf { it.peakUsage.used } / (1024.0 * 1024.0)
+            peakHeapMb = maxOf(peakHeapMb, peak)
+        }
+
+        private fun heapPools() = ManagementFactory.getMemoryPoolMXBeans().filter { it.type == MemoryType.HEAP }
+    }
+
+    @Benchmark
+    fun process(state: CorpusState, heap: PeakHeap): Boolean {
+        val result = ProcessorHarness.run(state.corpus)
+        check(result.success) { result.diagnostics }
+        heap.record()
+        return result.success
+    }
+}
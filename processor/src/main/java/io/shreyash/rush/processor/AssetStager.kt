@@ -0,0 +1,109 @@
+package io.shreyash.rush.processor
+
+import shaded.org.json.JSONException
+import shaded.org.json.JSONObject
+import java.io.IOException
+import java.nio.file.FileSystemException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.io.path.exists
+import kotlin.io.path.readText
+import kotlin.io.path.writeText
+
+/**
+ * Stages asset files (the extension's icon and the assets listed in rush.yml) into the build
+ * directory.
+ *
+ * Every staged file is recorded in a manifest along with the SHA-256 hash of its contents. A file
+ * whose source hash matches the one in the manifest is left alone instead of being copied again.
+ * The JVM has no API for reflinks, so copy-on-write clones are left to the filesystem's copy.
+ *
+ * Files are copied unless [link] is set ([ProcessorOptions.linkAssets]), in which case they are
+ * hardlinked where the filesystem allows it. A hardlink is the source file itself under another
+ * name: anything that later modifies the staged file in place (eg, a tool that optimizes images in
+ * the build directory) modifies the project's asset too. Linking is only safe if nothing writes to
+ * the build directory's assets.
+ *
+ * A single stager can be shared by generators that run concurrently, as long as they stage files
+ * to different destinations.
+ */
+class AssetStager(private val buildDir: Path, private val link: Boolean) {
+    private val manifestFile = buildDir.resolve("staged-assets.json")
+
+    /** Hashes of the staged files, keyed by their path relative to [buildDir]. */
+    private val staged: MutableMap<String, String> = ConcurrentHashMap(loadManifest())
+
+    /**
+     * Stages [source] at [dest], unless it is already there.
+     *
+     * @return `true` if the file had to be staged, `false` if it was up-to-date.
+     */
+    fun stage(source: Path, dest: Path): Boolean {
+        val key = buildDir.relativize(dest.toAbsolutePath().normalize()).toString().replace('\\', '/')
+        val hash = hashOf(source)
+        if (staged[key] == hash && dest.exists() && Files.size(dest) == Files.size(source)) {
+            // A link staged by an earlier build with linking on is replaced by a copy.
+            if (link || !Files.isSameFile(source, dest)) {
+                return false
+            }
+        }
+
+        Files.createDirectories(dest.parent)
+        Files.deleteIfExists(dest)
+        if (!link || !tryLink(source, dest)) {
+            Files.copy(source, dest, StandardCopyOption.REPLACE_EXISTING)
+        }
+
+        staged[key] = hash
+        return true
+    }
+
+    /** @return `false` if [dest] couldn't be hardlinked to [source]. */
+    private fun tryLink(source: Path, dest: Path): Boolean {
+        return try {
+            Files.createLink(dest, source)
+            true
+        } catch (e: FileSystemException) {
+            // Different filesystems, or no support for hardlinks.
+            false
+        } catch (e: UnsupportedOperationException) {
+            false
+        }
+    }
+
+    /** Writes the manifest of staged files. */
+    fun save() {
+        Files.createDirectories(buildDir)
+        manifestFile.writeText(JSONObject(staged.toSortedMap()).toString(2))
+    }
+
+    private fun loadManifest(): MutableMap<String, String> {
+        if (!manifestFile.exists()) return mutableMapOf()
+
+        return try {
+            val json = JSONObject(manifestFile.readText())
+            json.keySet().associateWith { json.getString(it) }.toMutableMap()
+        } catch (e: JSONException) {
+            // A corrupt manifest only means that everything gets staged again.
+            mutableMapOf()
+        } catch (e: IOException) {
+            mutableMapOf()
+        }
+    }
+
+    private fun hashOf(file: Path): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        Files.newInputStream(file).use { input ->
+            val buffer = ByteArray(64 * 1024)
+            while (true) {
+                val n = input.read(buffer)
+                if (n < 0) break
+                digest.update(buffer, 0, n)
+            }
+        }
+        return digest.digest().joinToString("") { "%02x".format(it) }
+    }
+}
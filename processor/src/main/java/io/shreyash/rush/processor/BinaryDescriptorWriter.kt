@@ -0,0 +1,156 @@
+package io.shreyash.rush.processor
+
+import io.shreyash.rush.descriptor.BinaryDescriptor
+import io.shreyash.rush.descriptor.BinaryDescriptor.BLOCK_SIZE
+import io.shreyash.rush.descriptor.BinaryDescriptor.COMPONENT_SIZE
+import io.shreyash.rush.descriptor.BinaryDescriptor.HEADER_SIZE
+import io.shreyash.rush.descriptor.BinaryDescriptor.NONE
+import io.shreyash.rush.descriptor.BinaryDescriptor.PARAM_SIZE
+import io.shreyash.rush.processor.model.Extension
+import shaded.org.json.JSONObject
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import kotlin.io.path.exists
+
+/**
+ * Writes the binary descriptor (`components.bin`) of [extensions], the compact and indexed
+ * counterpart of components.json. See [BinaryDescriptor] (in the dependency-free `descriptor`
+ * module, which tools can read the file with) for the format.
+ */
+class BinaryDescriptorWriter(private val extensions: List<Extension>) {
+    private class BlockRecord(
+        val name: String,
+        val nameIndex: Int,
+        val type: Int,
+        val flags: Int,
+        val params: List<Pair<Int, Int>>,
+    )
+
+    /** Indices of the strings in the string table. */
+    private val strings = LinkedHashMap<String, Int>()
+
+    /**
+     * Writes the descriptor to [file]. Like [DescriptorWriter], the file is left untouched if its
+     * contents are already the same.
+     */
+    fun write(file: Path) {
+        val bytes = encode()
+        if (file.exists() && Files.size(file) == bytes.size.toLong() && Files.readAllBytes(file).contentEquals(bytes)) {
+            return
+        }
+
+        Files.createDirectories(file.parent)
+        val tempFile = Files.createTempFile(file.parent, file.fileName.toString(), ".tmp")
+        try {
+            Files.write(tempFile, bytes)
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } finally {
+            Files.deleteIfExists(tempFile)
+        }
+    }
+
+    private fun encode(): ByteArray {
+        strings.clear()
+        val components = extensions.map { ext ->
+            Triple(
+                indexOf(ext.extensionComponent.name),
+                indexOf(ext.fqcn),
+                listOf(
+                    ext.events.map { blockRecordOf(it, null) },
+                    ext.functions.map { blockRecordOf(it, "returnType") },
+                    ext.properties.map { blockRecordOf(it, "type") },
+                    ext.designerProperties.map { blockRecordOf(it, "editorType") },
+                ).map { section -> section.sortedBy { it.name } }
+            )
+        }
+
+        val stringBytes = strings.keys.map { it.toByteArray(Charsets.UTF_8) }
+        val blockCount = components.sumOf { (_, _, sections) -> sections.sumOf { it.size } }
+        val paramCount = components.sumOf { (_, _, sections) -> sections.sumOf { s -> s.sumOf { it.params.size } } }
+
+        val componentTableOffset = HEADER_SIZE
+        val blocksOffset = componentTableOffset + components.size * COMPONENT_SIZE
+        val paramsOffset = blocksOffset + blockCount * BLOCK_SIZE
+        val stringsOffset = paramsOffset + paramCount * PARAM_SIZE
+        val size = stringsOffset + (stringBytes.size + 1) * 4 + stringBytes.sumOf { it.size }
+
+        val buffer = ByteBuffer.allocate(size)
+        buffer.putInt(BinaryDescriptor.MAGIC)
+            .putShort(BinaryDescriptor.VERSION.toShort())
+            .putShort(0)
+            .putInt(components.size)
+            .putInt(componentTableOffset)
+            .putInt(stringBytes.size)
+            .putInt(stringsOffset)
+
+        // Block and param records are appended to their areas in the order of the components.
+        var nextBlock = blocksOffset
+        var nextParam = paramsOffset
+        components.forEachIndexed { i, (name, type, sections) ->
+            val component = componentTableOffset + i * COMPONENT_SIZE
+            buffer.putInt(component, name)
+            buffer.putInt(component + 4, type)
+
+            sections.forEachIndexed { j, section ->
+                buffer.putInt(component + 8 + j * 8, nextBlock)
+                buffer.putInt(component + 12 + j * 8, section.size)
+
+                for (block in section) {
+                    buffer.putInt(nextBlock, block.nameIndex)
+                    buffer.putInt(nextBlock + 4, block.type)
+                    buffer.putInt(nextBlock + 8, block.flags)
+                    buffer.putInt(nextBlock + 12, nextParam)
+                    buffer.putInt(nextBlock + 16, block.params.size)
+                    nextBlock += BLOCK_SIZE
+
+                    for ((paramName, paramType) in block.params) {
+                        buffer.putInt(nextParam, paramName)
+                        buffer.putInt(nextParam + 4, paramType)
+                        nextParam += PARAM_SIZE
+                    }
+                }
+            }
+        }
+
+        var position = stringsOffset
+        var stringOffset = 0
+        for (bytes in stringBytes) {
+            buffer.putInt(position, stringOffset)
+            position += 4
+            stringOffset += bytes.size
+        }
+        buffer.putInt(position, stringOffset)
+        position += 4
+
+        val array = buffer.array()
+        for (bytes in stringBytes) {
+            bytes.copyInto(array, position)
+            position += bytes.size
+        }
+        return array
+    }
+
+    private fun blockRecordOf(json: JSONObject, typeKey: String?): BlockRecord {
+        var flags = 0
+        if (json.optString("deprecated") == "true") {
+            flags = flags or BinaryDescriptor.FLAG_DEPRECATED
+        }
+        val accessType = BinaryDescriptor.ACCESS_TYPES.indexOf(json.optString("rw", null)).coerceAtLeast(0)
+        flags = flags or (accessType shl BinaryDescriptor.ACCESS_TYPE_SHIFT)
+
+        val params = json.optJSONArray("params")?.let { array ->
+            (0 until array.length()).map {
+                val param = array.getJSONObject(it)
+                Pair(indexOf(param.getString("name")), indexOf(param.getString("type")))
+            }
+        } ?: listOf()
+
+        val name = json.getString("name")
+        val type = if (typeKey == null) NONE else indexOf(json.optString(typeKey, null))
+        return BlockRecord(name, indexOf(name), type, flags, params)
+    }
+
+    private fun indexOf(string: String?): Int = if (string == null) NONE else strings.getOrPut(string) { strings.size }
+}
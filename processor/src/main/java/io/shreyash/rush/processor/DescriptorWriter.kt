@@ -0,0 +1,169 @@
+package io.shreyash.rush.processor
+
+import shaded.org.json.JSONArray
+import shaded.org.json.JSONObject
+import java.io.BufferedWriter
+import java.io.Closeable
+import java.io.InputStream
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.charset.CodingErrorAction
+import java.nio.charset.StandardCharsets
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import kotlin.io.path.exists
+
+/**
+ * Streams a JSON descriptor file (`components.json`, `component_build_infos.json`) straight to a
+ * buffered file channel, instead of building the whole document in memory first.
+ *
+ * The output is byte-for-byte identical to what `JSONArray.toString()` would have produced for
+ * the same data: objects are emitted in the (hash) order [JSONObject] uses for its keys, fields
+ * with `null` values are dropped just like [JSONObject.put] does, and the values themselves are
+ * encoded by `shaded.org.json`.
+ *
+ * The document is first written to a temporary file next to [path], which then replaces [path]
+ * only if their contents differ. This way, unchanged files keep their modification time. The
+ * document is complete once its top-level array is ended with [endArray]. If the writer is closed
+ * before that, for eg., because writing failed halfway, the temporary file is discarded and [path]
+ * is left as it was.
+ */
+class DescriptorWriter(private val path: Path) : Closeable {
+    private val tmpPath = Files.createTempFile(path.toAbsolutePath().parent, path.fileName.toString(), ".tmp")
+
+    private val writer = BufferedWriter(
+        Channels.newWriter(
+            FileChannel.open(
+                tmpPath,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+            ),
+            // Like String.toByteArray(), replace what can't be encoded (lone surrogates) with '?'.
+            StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE),
+            BUFFER_SIZE
+        ),
+        BUFFER_SIZE
+    )
+
+    /** Whether the next array element needs to be preceded by a comma. */
+    private var needsComma = false
+
+    /** Whether the whole document has been written. */
+    private var completed = false
+
+    fun beginArray() {
+        writer.write('['.code)
+        needsComma = false
+    }
+
+    fun endArray() {
+        writer.write(']'.code)
+        completed = true
+    }
+
+    /**
+     * Writes a JSON object with [fields] as the next element of the current array. The fields must
+     * be in the order they would have been `put` into a [JSONObject].
+     */
+    fun writeObject(fields: List<Pair<String, Any?>>) {
+        if (needsComma) writer.write(','.code)
+        needsComma = true
+
+        // JSONObject stores its keys in a default HashMap, so a HashMap built from the same
+        // sequence of puts iterates the keys in the exact same order.
+        val ordered = HashMap<String, Any>()
+        for ((key, value) in fields) {
+            if (value == null) ordered.remove(key) else ordered[key] = value
+        }
+
+        writer.write('{'.code)
+        var first = true
+        for ((key, value) in ordered) {
+            if (!first) writer.write(','.code)
+            first = false
+            JSONObject.quote(key, writer)
+            writer.write(':'.code)
+            writeValue(value)
+        }
+        writer.write('}'.code)
+    }
+
+    private fun writeValue(value: Any) {
+        when (value) {
+            is String -> JSONObject.quote(value, writer)
+            is JSONObject -> value.write(writer)
+            is JSONArray -> value.write(writer)
+            is Collection<*> -> {
+                writer.write('['.code)
+                var first = true
+                for (item in value) {
+                    if (!first) writer.write(','.code)
+                    first = false
+                    if (item == null) writer.write("null") else writeValue(item)
+                }
+                writer.write(']'.code)
+            }
+            else -> writer.write(JSONObject.valueToString(value))
+        }
+    }
+
+    override fun close() {
+        try {
+            writer.close()
+            if (completed && !(path.exists() && sameContents(path, tmpPath))) {
+                replace(path, tmpPath)
+            }
+        } finally {
+            Files.deleteIfExists(tmpPath)
+        }
+    }
+
+    /** Replaces [target] with [source], atomically if the filesystem supports it. */
+    private fun replace(target: Path, source: Path) {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } catch (e: AtomicMoveNotSupportedException) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING)
+        }
+    }
+
+    private fun sameContents(a: Path, b: Path): Boolean {
+        if (Files.size(a) != Files.size(b)) return false
+
+        Files.newInputStream(a).buffered(BUFFER_SIZE).use { inA ->
+            Files.newInputStream(b).buffered(BUFFER_SIZE).use { inB ->
+                val bufA = ByteArray(BUFFER_SIZE)
+                val bufB = ByteArray(BUFFER_SIZE)
+                while (true) {
+                    val n = inA.readFully(bufA)
+                    if (n == 0) return true
+                    if (inB.readFully(bufB) != n) return false
+                    for (i in 0 until n) {
+                        if (bufA[i] != bufB[i]) return false
+                    }
+                }
+            }
+        }
+    }
+
+    /** Reads until [buf] is full or the stream ends. @return The number of bytes read. */
+    private fun InputStream.readFully(buf: ByteArray): Int {
+        var total = 0
+        while (total < buf.size) {
+            val n = read(buf, total, buf.size - total)
+            if (n < 0) break
+            total += n
+        }
+        return total
+    }
+
+    companion object {
+        private const val BUFFER_SIZE = 64 * 1024
+    }
+}
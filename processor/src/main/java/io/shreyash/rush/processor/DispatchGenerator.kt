@@ -0,0 +1,177 @@
+package io.shreyash.rush.processor
+
+import com.google.appinventor.components.annotations.DesignerProperty
+import com.google.appinventor.components.annotations.SimpleEvent
+import com.google.appinventor.components.annotations.SimpleFunction
+import com.google.appinventor.components.annotations.SimpleProperty
+import javax.annotation.processing.Filer
+import javax.lang.model.element.ElementKind
+import javax.lang.model.element.ExecutableElement
+import javax.lang.model.element.Modifier
+import javax.lang.model.element.TypeElement
+import javax.lang.model.type.ArrayType
+import javax.lang.model.type.DeclaredType
+import javax.lang.model.type.PrimitiveType
+import javax.lang.model.type.TypeKind
+import javax.lang.model.type.TypeMirror
+import javax.lang.model.util.Elements
+import javax.lang.model.util.Types
+
+/**
+ * Generates the `<Extension>$$Dispatch` class of an extension, which calls its functions, events
+ * and property accessors by name without going through reflection.
+ *
+ * The class is generated straight from the extension's [TypeElement] (rather than from its block
+ * models), so it can be generated even when the descriptors of the extension come from the cache.
+ */
+class DispatchGenerator(
+    private val filer: Filer,
+    private val elementUtils: Elements,
+    private val typeUtils: Types,
+) {
+    /** Generates the dispatch class of [element] through the [Filer]. */
+    fun generate(element: TypeElement) {
+        val packageName = elementUtils.getPackageOf(element).qualifiedName.toString()
+        val className = "${element.simpleName}\$\$Dispatch"
+        val source = sourceOf(element, packageName, className)
+
+        val name = if (packageName.isEmpty()) className else "$packageName.$className"
+        filer.createSourceFile(name, element).openWriter().use { it.write(source) }
+    }
+
+    private fun sourceOf(element: TypeElement, packageName: String, className: String): String {
+        val functions = LinkedHashMap<String, ExecutableElement>()
+        val events = LinkedHashMap<String, ExecutableElement>()
+        val getters = LinkedHashMap<String, ExecutableElement>()
+        val setters = LinkedHashMap<String, ExecutableElement>()
+
+        // Blocks can't be overloaded, so only the first method of each name is dispatched to.
+        for (member in element.enclosedElements) {
+            if (member.kind != ElementKind.METHOD || !member.modifiers.contains(Modifier.PUBLIC)) {
+                continue
+            }
+
+            member as ExecutableElement
+            val name = member.simpleName.toString()
+            if (member.getAnnotation(SimpleFunction::class.java) != null) {
+                functions.putIfAbsent(name, member)
+            }
+            if (member.getAnnotation(SimpleEvent::class.java) != null) {
+                events.putIfAbsent(name, member)
+            }
+            if (member.getAnnotation(SimpleProperty::class.java) != null ||
+                member.getAnnotation(DesignerProperty::class.java) != null
+            ) {
+                val isVoid = member.returnType.kind == TypeKind.VOID
+                if (isVoid && member.parameters.size == 1) {
+                    setters.putIfAbsent(name, member)
+                } else if (!isVoid && member.parameters.isEmpty()) {
+                    getters.putIfAbsent(name, member)
+                }
+            }
+        }
+
+        val target = element.qualifiedName.toString()
+        val sb = StringBuilder()
+        sb.append("// Generated by Rush. Do not edit.\n")
+        if (packageName.isNotEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n")
+        }
+        sb.append(
+            """
+            |/**
+            | * Calls the blocks of {@link $target} by name, without reflection.
+            | *
+            | * <p>Names are matched with a string switch. Passing interned names, as the runtime does,
+            | * turns the final comparison of each lookup into an identity check.
+            | */
+            |@SuppressWarnings({"unchecked", "rawtypes"})
+            |public final class $className {
+            |    private $className() {
+            |    }
+            |
+            """.trimMargin()
+        ).append("\n")
+
+        appendInvoker(sb, "callFunction", "function", target, functions)
+        sb.append('\n')
+        appendInvoker(sb, "fireEvent", "event", target, events)
+        sb.append('\n')
+
+        sb.append("    public static Object getProperty($target target, String name) throws Exception {\n")
+        sb.append("        switch (name) {\n")
+        for ((name, getter) in getters) {
+            sb.append("            case \"").append(name).append("\":\n")
+            sb.append("                return target.").append(getter.simpleName).append("();\n")
+        }
+        appendDefault(sb, "property")
+        sb.append('\n')
+
+        sb.append("    public static void setProperty($target target, String name, Object value) throws Exception {\n")
+        sb.append("        switch (name) {\n")
+        for ((name, setter) in setters) {
+            sb.append("            case \"").append(name).append("\":\n")
+            sb.append("                target.").append(setter.simpleName)
+                .append("((").append(castTypeOf(setter.parameters[0].asType())).append(") value);\n")
+            sb.append("                return;\n")
+        }
+        appendDefault(sb, "property")
+
+        sb.append("}\n")
+        return sb.toString()
+    }
+
+    /** Appends a method that calls the method named `name` of `target` with `args`. */
+    private fun appendInvoker(
+        sb: StringBuilder,
+        methodName: String,
+        kind: String,
+        target: String,
+        methods: Map<String, ExecutableElement>,
+    ) {
+        sb.append("    public static Object $methodName($target target, String name, Object[] args) throws Exception {\n")
+        sb.append("        switch (name) {\n")
+        for ((name, method) in methods) {
+            val args = method.parameters.withIndex().joinToString(", ") { (i, param) ->
+                "(${castTypeOf(param.asType())}) args[$i]"
+            }
+            val call = "target.${method.simpleName}($args)"
+            sb.append("            case \"").append(name).append("\":\n")
+            if (method.returnType.kind == TypeKind.VOID) {
+                sb.append("                ").append(call).append(";\n")
+                sb.append("                return null;\n")
+            } else {
+                sb.append("                return ").append(call).append(";\n")
+            }
+        }
+        appendDefault(sb, kind)
+    }
+
+    private fun appendDefault(sb: StringBuilder, kind: String) {
+        sb.append("            default:\n")
+        sb.append("                throw new IllegalArgumentException(\"No such $kind: \" + name);\n")
+        sb.append("        }\n")
+        sb.append("    }\n")
+    }
+
+    /**
+     * @return The type an `Object` argument must be cast to before being passed as a parameter of
+     * [type]: the boxed class for primitives, and the erasure for everything else.
+     */
+    private fun castTypeOf(type: TypeMirror): String = if (type.kind.isPrimitive) {
+        typeUtils.boxedClass(type as PrimitiveType).qualifiedName.toString()
+    } else {
+        sourceNameOf(typeUtils.erasure(type))
+    }
+
+    /**
+     * @return The name of the erased [type] as it is written in source. It is built from elements
+     * rather than with [TypeMirror.toString], which includes type annotations (like `@Options` and
+     * `@Asset`), and those can't appear in a cast.
+     */
+    private fun sourceNameOf(type: TypeMirror): String = when (type.kind) {
+        TypeKind.ARRAY -> sourceNameOf((type as ArrayType).componentType) + "[]"
+        TypeKind.DECLARED -> ((type as DeclaredType).asElement() as TypeElement).qualifiedName.toString()
+        else -> if (type.kind.isPrimitive) type.kind.name.lowercase() else type.toString()
+    }
+}
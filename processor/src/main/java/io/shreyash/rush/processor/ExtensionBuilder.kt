@@ -0,0 +1,58 @@
+package io.shreyash.rush.processor
+
+import io.shreyash.rush.processor.model.Extension
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Runs the (pure) tasks that turn block models into [Extension]s, or that generate the descriptor
+ * files of a group of extensions, either one after another on the calling thread or concurrently
+ * on a bounded thread pool.
+ */
+class ExtensionBuilder(private val parallel: Boolean) {
+
+    /**
+     * Runs all the [tasks] and returns their results in the same order. If a task fails, [onError]
+     * is called with the task's index and the cause on the calling thread, and its result is left
+     * out.
+     */
+    fun <T> buildAll(tasks: List<() -> T>, onError: (Int, Throwable) -> Unit): List<T> {
+        if (!parallel || tasks.size < 2) {
+            return tasks.mapIndexedNotNull { i, task ->
+                try {
+                    task()
+                } catch (e: Throwable) {
+                    onError(i, e)
+                    null
+                }
+            }
+        }
+
+        val threads = Runtime.getRuntime().availableProcessors().coerceIn(1, tasks.size)
+        val pool = Executors.newFixedThreadPool(threads, WorkerThreadFactory())
+        try {
+            val futures = tasks.map { task -> pool.submit(Callable { task() }) }
+            return futures.mapIndexedNotNull { i, future ->
+                try {
+                    future.get()
+                } catch (e: ExecutionException) {
+                    onError(i, e.cause ?: e)
+                    null
+                }
+            }
+        } finally {
+            pool.shutdownNow()
+        }
+    }
+
+    private class WorkerThreadFactory : ThreadFactory {
+        private val count = AtomicInteger()
+
+        override fun newThread(r: Runnable) = Thread(r, "rush-extension-builder-${count.incrementAndGet()}").apply {
+            isDaemon = true
+        }
+    }
+}
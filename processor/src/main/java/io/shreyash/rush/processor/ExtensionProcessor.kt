@@ -5,11 +5,21 @@ import com.google.appinventor.components.annotations.SimpleEvent
 import com.google.appinventor.components.annotations.SimpleFunction
 import com.google.appinventor.components.annotations.SimpleProperty
 import com.google.auto.service.AutoService
+import io.shreyash.rush.processor.block.Block
 import io.shreyash.rush.processor.block.DesignerProperty
 import io.shreyash.rush.processor.block.Event
 import io.shreyash.rush.processor.block.Function
+import io.shreyash.rush.processor.block.OptionListExtractor
 import io.shreyash.rush.processor.block.Property
+import io.shreyash.rush.processor.block.PropertyIndex
+import io.shreyash.rush.processor.cache.DescriptorCache
+import io.shreyash.rush.processor.cache.Fingerprinter
+import io.shreyash.rush.processor.cache.TrackingMessager
 import io.shreyash.rush.processor.model.Extension
+import io.shreyash.rush.processor.model.ExtensionModel
+import io.shreyash.rush.processor.util.Markdown
+import io.shreyash.rush.processor.util.YailTypeConvertor
+import java.nio.file.Paths
 import javax.annotation.processing.*
 import javax.lang.model.SourceVersion
 import javax.lang.model.element.Element
@@ -34,105 +44,240 @@ import javax.tools.Diagnostic
 class ExtensionProcessor : AbstractProcessor() {
     private var isFirstRound = true
 
-    private lateinit var messager: Messager
+    private lateinit var messager: TrackingMessager
     private lateinit var elementUtils: Elements
+    private lateinit var options: ProcessorOptions
+    private lateinit var optionLists: OptionListExtractor
+    private lateinit var yailTypes: YailTypeConvertor
+    private lateinit var profiler: Profiler
 
     @Synchronized
     override fun init(processingEnv: ProcessingEnvironment) {
         super.init(processingEnv)
-        messager = processingEnv.messager
+        messager = TrackingMessager(processingEnv.messager)
         elementUtils = processingEnv.elementUtils
+        options = ProcessorOptions(processingEnv.options)
+        profiler = Profiler(options.profile)
+        optionLists = OptionListExtractor(processingEnv, profiler, options)
+        yailTypes = YailTypeConvertor(processingEnv.typeUtils, elementUtils)
     }
 
+    override fun getSupportedOptions() = ProcessorOptions.supported
+
     override fun process(annotations: Set<TypeElement?>, roundEnv: RoundEnvironment): Boolean {
         if (!isFirstRound) {
             return true
         }
         isFirstRound = false
 
+        val session = ProcessingSession(messager, profiler, options.projectRoot)
+        val markdownNanosBefore = Markdown.totalRenderNanos
+
         val elements = roundEnv.getElementsAnnotatedWith(ExtensionComponent::class.java)
-        elements
-            .groupBy { elementUtils.getPackageOf(it).qualifiedName }
-            .apply {
-                if (this.size > 1) {
-                    val classes = this.map {
-                        val sb = StringBuilder()
-                        it.value.forEach { el ->
-                            sb.append("  - ${it.key}.${el.simpleName}\n")
-                        }
-                        sb.toString()
-                    }.joinToString("\n")
-
-                    messager.printMessage(
-                        Diagnostic.Kind.ERROR,
-                        """
-                    |Classes annotated with @Meta annotation must reside in the same package.
-                    |The following classes have different packages:
-                    |$classes
-                    |NOTE Try moving all the above classes under the same package.
-                    """.trimMargin("|")
-                    )
-                }
+
+        val cache = if (options.incremental) {
+            DescriptorCache(Paths.get(session.projectRoot, ".rush", "build", "cache", "descriptors"))
+        } else {
+            null
+        }
+        val fingerprinter = Fingerprinter(elementUtils, optionLists)
+
+        // All the work that touches the element tree happens here, on the processor thread. What
+        // remains is building the JSON descriptors, which can be done in parallel.
+        val tasks = mutableListOf<() -> Extension>()
+        val taskElements = mutableListOf<TypeElement>()
+        for (element in elements) {
+            try {
+                tasks.add(extensionTask(element as TypeElement, cache, fingerprinter))
+                taskElements.add(element)
+            } catch (e: Throwable) {
+                messager.printMessage(Diagnostic.Kind.ERROR, e.message ?: e.stackTraceToString(), element)
             }
+        }
+        if (options.dispatch) {
+            generateDispatchClasses(taskElements)
+        }
 
-        val extensions = elements.map {
-            processExtensionElement(it, elementUtils)
+        val extensions = ExtensionBuilder(options.parallel).buildAll(tasks) { i, e ->
+            messager.printMessage(Diagnostic.Kind.ERROR, e.message ?: e.stackTraceToString(), taskElements[i])
+        }
+        val packages = profiler.measure(Profiler.ELEMENT_GROUPING) {
+            extensions.groupBy { it.fqcn.substringBeforeLast('.') }
+        }
+        generateInfoFiles(packages, session)
+        optionLists.reportCacheStats(messager)
+
+        if (profiler.enabled) {
+            profiler.record(Profiler.MARKDOWN_RENDERING, Markdown.totalRenderNanos - markdownNanosBefore)
+            profiler.count("extensions", extensions.size.toLong())
+            val report = Paths.get(session.projectRoot, ".rush", "build", "profile.json")
+            profiler.writeReport(report)
+            messager.printMessage(Diagnostic.Kind.NOTE, "Profiling report written to $report")
         }
-        generateInfoFiles(extensions)
 
         return false
     }
 
-    private fun processExtensionElement(element: Element, elementUtils: Elements): Extension {
-        // Process simple events
-        val events = element.enclosedElements
-            .filter { it.getAnnotation(SimpleEvent::class.java) != null && isPublic(it) }
-            .map { Event(it as ExecutableElement, messager, elementUtils) }
-
-        // Process simple functions
-        val functions = element.enclosedElements
-            .filter { it.getAnnotation(SimpleFunction::class.java) != null && isPublic(it) }
-            .map { Function(it as ExecutableElement, messager, elementUtils) }
-
-        // Process simple properties
-        val processedProperties = mutableListOf<Property>()
-        val properties = element.enclosedElements
-            .filter { it.getAnnotation(SimpleProperty::class.java) != null && isPublic(it) }
-            .map {
-                val property = Property(it as ExecutableElement, messager, processedProperties, elementUtils)
-                processedProperties.add(property)
-                property
+    /**
+     * Returns a task that produces the [Extension] of [element]. If [element] hasn't changed since
+     * it was last cached, the task simply returns the cached extension. Otherwise, it builds the
+     * extension from the block models, and caches it only if the models passed all the checks.
+     */
+    private fun extensionTask(
+        element: TypeElement,
+        cache: DescriptorCache?,
+        fingerprinter: Fingerprinter
+    ): () -> Extension {
+        if (cache == null) {
+            val model = processExtensionElement(element, elementUtils)
+            return { profiler.measure(Profiler.JSON_BUILDING) { model.toExtension() } }
+        }
+
+        val fqcn = element.qualifiedName.toString()
+        val fingerprint = fingerprinter.fingerprintOf(element)
+        cache.get(fqcn, fingerprint, element.getAnnotation(ExtensionComponent::class.java))?.let {
+            return { it }
+        }
+
+        val errorsBefore = messager.errorCount
+        val model = processExtensionElement(element, elementUtils)
+        val passedChecks = messager.errorCount == errorsBefore
+        return {
+            profiler.measure(Profiler.JSON_BUILDING) { model.toExtension() }.also {
+                if (passedChecks) cache.put(it, fingerprint)
+            }
+        }
+    }
+
+    /** Creates the models of all the blocks of [element] in a single pass over its members. */
+    private fun processExtensionElement(element: Element, elementUtils: Elements): ExtensionModel {
+        val events = mutableListOf<Event>()
+        val functions = mutableListOf<Function>()
+        val propertyElements = mutableListOf<ExecutableElement>()
+        val designerPropertyElements = mutableListOf<ExecutableElement>()
+
+        for (member in element.enclosedElements) {
+            val isEvent = member.getAnnotation(SimpleEvent::class.java) != null
+            val isFunction = member.getAnnotation(SimpleFunction::class.java) != null
+            val isProperty = member.getAnnotation(SimpleProperty::class.java) != null
+            val isDesignerProperty =
+                member.getAnnotation(com.google.appinventor.components.annotations.DesignerProperty::class.java) != null
+
+            if (!(isEvent || isFunction || isProperty || isDesignerProperty) || !isPublic(member)) {
+                continue
+            }
+
+            member as ExecutableElement
+            if (isEvent) {
+                events.add(createBlock { Event(member, messager, elementUtils, optionLists, yailTypes) })
+            }
+            if (isFunction) {
+                functions.add(createBlock { Function(member, messager, elementUtils, optionLists, yailTypes) })
+            }
+            if (isProperty) {
+                propertyElements.add(member)
             }
+            if (isDesignerProperty) {
+                designerPropertyElements.add(member)
+            }
+        }
 
-        // Process designer properties
-        val designerProperties = element.enclosedElements
-            .filter {
-                it.getAnnotation(com.google.appinventor.components.annotations.DesignerProperty::class.java) != null
-                        && isPublic(it)
-            }.map { DesignerProperty(it as ExecutableElement, messager, properties) }
+        // Simple properties are checked only once all of them have been indexed, so that getters
+        // and setters are paired regardless of the order in which they are declared.
+        val propertyIndex = PropertyIndex()
+        val properties = propertyElements.map {
+            profiler.measure(Profiler.BLOCK_CONSTRUCTION) {
+                Property(it, messager, propertyIndex, elementUtils, optionLists, yailTypes)
+            }.also(propertyIndex::add)
+        }
+        for (property in properties) {
+            profiler.measure(Profiler.CHECKS) { property.runChecks() }
+            profiler.measure(Profiler.BLOCK_CONSTRUCTION) { property.resolve() }
+            profiler.count("blocks")
+        }
+
+        // Designer properties are processed last because they need all the simple properties.
+        val designerProperties = designerPropertyElements.map {
+            createBlock { DesignerProperty(it, messager, propertyIndex, optionLists, yailTypes) }
+        }
 
         val packageName = elementUtils.getPackageOf(element).qualifiedName.toString()
         val fqcn = "$packageName.${element.simpleName}"
 
-        return Extension(
+        return ExtensionModel(
             element.getAnnotation(ExtensionComponent::class.java),
             fqcn,
             events,
             functions,
             properties,
-            designerProperties
+            designerProperties,
         )
     }
 
-    /** Generates the component info files (JSON). */
-    private fun generateInfoFiles(extensions: List<Extension>) {
-        val generator = InfoFilesGenerator(extensions)
+    /**
+     * Creates a block with [create], runs its checks and resolves the rest of its attributes, so
+     * that it can be turned into JSON off the processor thread.
+     */
+    private inline fun <T : Block> createBlock(create: () -> T): T {
+        val block = profiler.measure(Profiler.BLOCK_CONSTRUCTION, create)
+        profiler.measure(Profiler.CHECKS) { block.runChecks() }
+        profiler.measure(Profiler.BLOCK_CONSTRUCTION) { block.resolve() }
+        profiler.count("blocks")
+        return block
+    }
+
+    /** Generates the `$$Dispatch` classes of [elements]. */
+    private fun generateDispatchClasses(elements: List<TypeElement>) {
+        val generator = DispatchGenerator(processingEnv.filer, elementUtils, processingEnv.typeUtils)
+        for (element in elements) {
+            try {
+                profiler.measure(Profiler.DISPATCH_GENERATION) { generator.generate(element) }
+            } catch (e: Throwable) {
+                messager.printMessage(Diagnostic.Kind.ERROR, e.message ?: e.stackTraceToString(), element)
+            }
+        }
+    }
+
+    /**
+     * Generates the component info files (JSON) of every package in [packages], concurrently if
+     * [ProcessorOptions.parallel] is set. The files of a project with a single extension package go
+     * straight into `.rush/build/raw`, and those of a project with several packages into
+     * `.rush/build/raw/<package>`.
+     */
+    private fun generateInfoFiles(packages: Map<String, List<Extension>>, session: ProcessingSession) {
+        val buildDir = Paths.get(session.projectRoot, ".rush", "build")
+        val rawBuildDir = buildDir.resolve("raw")
+        val assetStager = AssetStager(buildDir, options.linkAssets)
+
+        // Even without extensions, the (empty) info files are still generated.
+        val groups = packages.toList().ifEmpty { listOf("" to emptyList()) }
+        val tasks = groups.map { (packageName, extensions) ->
+            {
+                val outputDir = if (groups.size == 1) rawBuildDir else rawBuildDir.resolve(packageName)
+                val generator = InfoFilesGenerator(
+                    extensions, session, outputDir, assetStager, options.reproducible, options.sourceDateEpoch
+                )
+                generator.generateComponentsJson()
+                generator.generateBinaryDescriptor()
+                generator.generateBuildInfoJson()
+                generator.stageAssets()
+            }
+        }
+        ExtensionBuilder(options.parallel).buildAll(tasks) { i, e ->
+            val message = e.message ?: e.stackTraceToString()
+            if (groups.size == 1) {
+                messager.printMessage(Diagnostic.Kind.ERROR, message)
+            } else {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Package ${groups[i].first}: $message")
+            }
+        }
+
         try {
-            generator.generateComponentsJson()
-            generator.generateBuildInfoJson()
+            assetStager.save()
         } catch (e: Throwable) {
             messager.printMessage(Diagnostic.Kind.ERROR, e.message ?: e.stackTraceToString())
         }
+        session.reportLoadTimings()
     }
 
     /** @returns `true` if [element] is a public element. */
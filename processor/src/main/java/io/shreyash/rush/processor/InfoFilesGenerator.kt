@@ -1,34 +1,60 @@
 package io.shreyash.rush.processor
 
-import com.charleskorn.kaml.Yaml
 import io.shreyash.rush.processor.model.Extension
 import io.shreyash.rush.processor.model.RushYaml
-import org.commonmark.ext.autolink.AutolinkExtension
-import org.commonmark.ext.task.list.items.TaskListItemsExtension
-import org.commonmark.parser.Parser
-import org.commonmark.renderer.html.HtmlRenderer
-import org.w3c.dom.*
-import org.xml.sax.SAXException
+import io.shreyash.rush.processor.util.Markdown
 import shaded.org.json.JSONArray
 import shaded.org.json.JSONException
 import shaded.org.json.JSONObject
-import java.io.FileInputStream
 import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.file.Path
 import java.nio.file.Paths
+import java.security.MessageDigest
+import java.time.Instant
 import java.time.LocalDate
+import java.time.ZoneOffset
 import java.time.format.DateTimeFormatter
 import java.util.regex.Pattern
-import javax.xml.parsers.DocumentBuilderFactory
-import javax.xml.parsers.ParserConfigurationException
-import kotlin.io.path.createDirectory
+import javax.xml.stream.XMLStreamException
+import kotlin.io.path.createDirectories
 import kotlin.io.path.exists
 
+/**
+ * Generates the descriptor files of a group of extensions (the ones that reside in the same
+ * package) into [outputDir].
+ *
+ * In [reproducible] mode, the same sources always produce the same files: the `version` of an
+ * extension is derived from a hash of its contents instead of being random, and `dateBuilt` is
+ * taken from [sourceDateEpoch] (if set) instead of the current date.
+ */
 class InfoFilesGenerator(
     private val extensions: List<Extension>,
+    private val session: ProcessingSession,
+    outputDir: Path,
+    private val assetStager: AssetStager,
+    private val reproducible: Boolean = false,
+    private val sourceDateEpoch: Long? = null,
 ) {
-    private val projectRoot = System.getenv("RUSH_PROJECT_ROOT")
-    private val rawBuildDir = Paths.get(projectRoot, ".rush", "build", "raw").apply {
-        if (!this.exists()) this.createDirectory()
+    private val projectRoot = session.projectRoot
+    private val rawBuildDir = outputDir.apply {
+        if (!this.exists()) this.createDirectories()
+    }
+
+    /**
+     * Stages all the assets listed in rush.yml into the extensions' assets directory.
+     *
+     * @throws IOException
+     */
+    fun stageAssets() {
+        session.profiler.measure(Profiler.ASSET_STAGING) {
+            for (asset in session.rushYaml.assets.map { it.trim() }) {
+                assetStager.stage(
+                    Paths.get(projectRoot, "assets", asset),
+                    Paths.get(rawBuildDir.toString(), "assets", asset)
+                )
+            }
+        }
     }
 
     /**
@@ -38,241 +64,203 @@ class InfoFilesGenerator(
      * @throws JSONException
      */
     fun generateComponentsJson() {
-        val yaml = metadataFile()
-        val componentsJsonArray = JSONArray()
-
-        for (ext in extensions) {
-            val extJsonObj = JSONObject()
-
-            // These are always the same for all extensions.
-            extJsonObj
-                .put("external", "true")
-                .put("categoryString", "EXTENSION")
-                .put("showOnPalette", "true")
-                .put("nonVisible", "true")
+        val yaml = session.rushYaml
+        val componentsJsonFile = Paths.get(rawBuildDir.toString(), "components.json")
+
+        // The icons are copied before the file is written, so that the time of each phase is
+        // measured on its own rather than one inside the other.
+        val iconNames = extensions.map { stageIcon(it) }
+        session.profiler.measure(Profiler.FILE_WRITING) {
+            writeComponentsJson(componentsJsonFile, yaml, iconNames)
+        }
+    }
 
-            extJsonObj
-                .put("name", ext.extensionComponent.name)
-                .put("helpString", parseMdString(ext.extensionComponent.description))
-                .put("type", ext.fqcn)
-                .put("helpUrl", yaml.homepage)
-                .put("licenseName", yaml.license)
-                .put("versionName", yaml.version)
-                // Choosing version at random because it has no effect whatsoever.
-                .put("version", (0..999_999).random().toString())
-                .put("androidMinSdk", yaml.android.minSdk.coerceAtLeast(7))
+    /** @return The icon name of [ext] in components.json, after copying the icon if it is an asset. */
+    private fun stageIcon(ext: Extension): String {
+        val icon = ext.extensionComponent.icon
+        if (urlPattern.matcher(icon).find()) return icon
 
-            val urlPattern = Pattern.compile(
-                """https?://(www\.)?[-a-zA-Z0-9@:%._+~#=]{1,256}\.[a-zA-Z0-9()]{1,6}\b([-a-zA-Z0-9()!@:%_+.~#?&//=]*)"""
+        session.profiler.measure(Profiler.ICON_COPY) {
+            assetStager.stage(
+                Paths.get(projectRoot, "assets", icon),
+                Paths.get(rawBuildDir.toString(), "aiwebres", icon)
             )
-            val icon = ext.extensionComponent.icon
-            if (urlPattern.matcher(icon).find()) {
-                extJsonObj.put("iconName", icon)
-            } else {
-                val origIcon = Paths.get(projectRoot, "assets", icon).toFile()
-                Paths.get(rawBuildDir.toString(), "aiwebres", icon).toFile().apply {
-                    if (this.exists()) this.delete()
-                    origIcon.copyTo(this)
-                }
-                extJsonObj.put("iconName", "aiwebres/$icon")
+        }
+        return "aiwebres/$icon"
+    }
+
+    private fun writeComponentsJson(componentsJsonFile: Path, yaml: RushYaml, iconNames: List<String>) {
+        DescriptorWriter(componentsJsonFile).use { writer ->
+            writer.beginArray()
+            extensions.forEachIndexed { i, ext ->
+                val time = buildDate().format(DateTimeFormatter.ISO_DATE)
+
+                // The fields are in the same order they used to be put into the extension's
+                // JSONObject. DescriptorWriter relies on it to reproduce JSONObject's key order.
+                writer.writeObject(
+                    listOf(
+                        // These are always the same for all extensions.
+                        "external" to "true",
+                        "categoryString" to "EXTENSION",
+                        "showOnPalette" to "true",
+                        "nonVisible" to "true",
+
+                        "name" to ext.extensionComponent.name,
+                        "helpString" to Markdown.render(ext.extensionComponent.description),
+                        "type" to ext.fqcn,
+                        "helpUrl" to yaml.homepage,
+                        "licenseName" to yaml.license,
+                        "versionName" to yaml.version,
+                        // The version has no effect whatsoever, so it is random unless the build needs
+                        // to be reproducible.
+                        "version" to if (reproducible) contentVersionOf(ext) else (0..999_999).random().toString(),
+                        "androidMinSdk" to yaml.android.minSdk.coerceAtLeast(7),
+                        "iconName" to iconNames[i],
+                        "dateBuilt" to time,
+
+                        // Put all blocks' descriptions
+                        "events" to ext.events,
+                        "methods" to ext.functions,
+                        "blockProperties" to ext.properties,
+                        "properties" to ext.designerProperties,
+                    )
+                )
             }
+            writer.endArray()
+        }
+    }
 
-            val time = LocalDate.now().format(DateTimeFormatter.ISO_DATE)
-            extJsonObj.put("dateBuilt", time)
+    /** @return A version number in the same range as the random ones, derived from [ext]'s contents. */
+    private fun contentVersionOf(ext: Extension): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        val blocks = ext.events + ext.functions + ext.properties + ext.designerProperties
+        val parts = listOf(ext.fqcn, ext.extensionComponent.name, ext.extensionComponent.description) +
+                blocks.map { canonicalJsonOf(it) }
+        for (part in parts) {
+            digest.update(part.toByteArray())
+            digest.update(0)
+        }
 
-            // Put all blocks' descriptions
-            extJsonObj
-                .put("events", ext.events.map { it.asJsonObject() })
-                .put("methods", ext.functions.map { it.asJsonObject() })
-                .put("blockProperties", ext.properties.map { it.asJsonObject() })
-                .put("properties", ext.designerProperties.map { it.asJsonObject() })
+        val hash = ByteBuffer.wrap(digest.digest()).int and Int.MAX_VALUE
+        return (hash % 1_000_000).toString()
+    }
+
+    /**
+     * @return [value] as JSON, with the keys of objects sorted, so that the same descriptor always
+     * gives the same text regardless of the order [JSONObject] happens to keep its keys in.
+     */
+    private fun canonicalJsonOf(value: Any?): String = StringBuilder().also { appendCanonicalJson(value, it) }.toString()
+
+    private fun appendCanonicalJson(value: Any?, sb: StringBuilder) {
+        when (value) {
+            null, JSONObject.NULL -> sb.append("null")
+            is JSONObject -> {
+                sb.append('{')
+                value.keySet().sorted().forEachIndexed { i, key ->
+                    if (i > 0) sb.append(',')
+                    sb.append(JSONObject.quote(key)).append(':')
+                    appendCanonicalJson(value.opt(key), sb)
+                }
+                sb.append('}')
+            }
+            is JSONArray -> appendCanonicalJson((0 until value.length()).map { value.opt(it) }, sb)
+            is Collection<*> -> {
+                sb.append('[')
+                value.forEachIndexed { i, item ->
+                    if (i > 0) sb.append(',')
+                    appendCanonicalJson(item, sb)
+                }
+                sb.append(']')
+            }
+            is String -> sb.append(JSONObject.quote(value))
+            else -> sb.append(JSONObject.valueToString(value))
+        }
+    }
 
-            componentsJsonArray.put(extJsonObj)
+    /** @return The date the extensions should be marked as built on. */
+    private fun buildDate(): LocalDate {
+        return if (reproducible && sourceDateEpoch != null) {
+            Instant.ofEpochSecond(sourceDateEpoch).atZone(ZoneOffset.UTC).toLocalDate()
+        } else {
+            LocalDate.now()
         }
+    }
 
-        val componentsJsonFile = Paths.get(rawBuildDir.toString(), "components.json").toFile()
-        componentsJsonFile.writeText(componentsJsonArray.toString())
+    /**
+     * Generates the components.bin file, the binary counterpart of components.json (see
+     * [io.shreyash.rush.descriptor.BinaryDescriptor]).
+     *
+     * @throws IOException
+     */
+    fun generateBinaryDescriptor() {
+        val binaryDescriptorFile = Paths.get(rawBuildDir.toString(), "components.bin")
+        session.profiler.measure(Profiler.FILE_WRITING) {
+            BinaryDescriptorWriter(extensions).write(binaryDescriptorFile)
+        }
     }
 
     /**
      * Generate component_build_infos.json file.
      *
      * @throws IOException
-     * @throws ParserConfigurationException
-     * @throws SAXException
+     * @throws XMLStreamException
      */
     fun generateBuildInfoJson() {
-        val yaml = metadataFile()
-        val buildInfoJsonArray = JSONArray()
-
-        for (ext in extensions) {
-            val extJsonObj = JSONObject()
-                .put("type", ext.fqcn)
-                .put("androidMinSdk", listOf(yaml.android.minSdk.coerceAtLeast(7)))
-
-            // Put assets
-            val assets = yaml.assets.map { it.trim() }
-            extJsonObj.put("assets", assets)
-
-            buildInfoJsonArray.put(extJsonObj)
-        }
+        val yaml = session.rushYaml
 
         // TODO: Add ability to declare extension specific manifest elements
 
-        // Before the annotation processor runs, the CLI merges the manifests of all the AAR deps
-        // with the extension's main manifest into a single manifest file.
-        // So, if the merged manifest is found use it instead of the main manifest.
-        val mergedManifest = Paths.get(rawBuildDir.toString(), "..", "files", "AndroidManifest.xml")
-        val manifest = if (mergedManifest.exists()) {
-            mergedManifest.toFile()
-        } else {
-            Paths.get(projectRoot, "src", "AndroidManifest.xml").toFile()
-        }
-
-        val builder = DocumentBuilderFactory.newInstance().newDocumentBuilder()
-        val doc = builder.parse(manifest)
+        val manifest = session.manifest
 
         // Put application elements
-        val appElements = applicationElementsXmlString(doc)
-        // We put all the elements under the activities tag. This lets us use the tags which aren't
-        // yet added to AI2 and don't have a dedicated key in the build info JSON file.
-        // The reason why this works is that AI compiler doesn't perform any checks on these
-        // manifest arrays in the build info file, and just adds them to the final manifest file.
-        buildInfoJsonArray.getJSONObject(0).put("activities", appElements)
+        val appElements = manifest.appElements.values.flatten()
 
         // Put permissions
-        val nodes = doc.getElementsByTagName("uses-permission")
-        val permissions = JSONArray()
-        if (nodes.length != 0) {
-            for (i in 0 until nodes.length) {
-                permissions.put(generateXmlString(nodes.item(i), "manifest"))
-            }
-        }
-        buildInfoJsonArray.getJSONObject(0).put("permissions", permissions)
+        val permissions = manifest.permissions
 
         val buildInfoJsonFile =
-            Paths.get(rawBuildDir.toString(), "files", "component_build_infos.json").toFile().apply {
-                this.parentFile.mkdirs()
+            Paths.get(rawBuildDir.toString(), "files", "component_build_infos.json").apply {
+                this.parent.createDirectories()
             }
-        buildInfoJsonFile.writeText(buildInfoJsonArray.toString())
-    }
 
-    /**
-     * Get metadata file
-     *
-     * @return The rush.yml file's data
-     * @throws IOException If the input can't be read for some reason.
-     */
-    private fun metadataFile(): RushYaml {
-        val rushYml = if (Paths.get(projectRoot, "rush.yml").exists()) {
-            Paths.get(projectRoot, "rush.yml").toFile()
-        } else {
-            Paths.get(projectRoot, "rush.yaml").toFile()
+        session.profiler.measure(Profiler.FILE_WRITING) {
+            writeBuildInfoJson(buildInfoJsonFile, yaml, appElements, permissions)
         }
-
-        return Yaml.default.decodeFromStream(RushYaml.serializer(), FileInputStream(rushYml))
     }
 
-    /** Parses [markdown] and returns it. */
-    private fun parseMdString(markdown: String): String {
-        val extensionList = listOf(
-            // Adds ability to convert URLs to clickable links
-            AutolinkExtension.create(),
-            // Adds ability to create task lists.
-            TaskListItemsExtension.create()
-        )
-
-        val parser = Parser.Builder().extensions(extensionList).build()
-        val renderer = HtmlRenderer.builder()
-            .extensions(extensionList)
-            .softbreak("<br>")
-            .build()
-
-        return renderer.render(parser.parse(markdown))
-    }
-
-    /**
-     * Returns a JSON array of specific XML elements from the given list of nodes.
-     *
-     * @param node   A XML node, for eg., <service>
-     * @param parent Name of the node whose child nodes we want to generate. This is required because
-     *               getElementsByTag() method returns all the elements that satisfy the name.
-     * @return A JSON array containing XML elements
-     */
-    private fun generateXmlString(node: Node, parent: String): String {
-        // Unlike other elements, permissions aren't stored as XML strings in the build info JSON
-        // file. Only the name of the permission (android:name) is stored.
-        if (node.nodeName == "uses-permission") {
-            val permission = node.attributes.getNamedItem("android:name")
-            return if (permission != null) {
-                permission.nodeValue
-            } else {
-                throw DOMException(
-                    1.toShort(),
-                    "ERR No android:name attribute found in <uses-permission>"
+    private fun writeBuildInfoJson(
+        buildInfoJsonFile: Path,
+        yaml: RushYaml,
+        appElements: List<String>,
+        permissions: List<String>,
+    ) {
+        DescriptorWriter(buildInfoJsonFile).use { writer ->
+            writer.beginArray()
+            extensions.forEachIndexed { i, ext ->
+                val fields = mutableListOf<Pair<String, Any?>>(
+                    "type" to ext.fqcn,
+                    "androidMinSdk" to listOf(yaml.android.minSdk.coerceAtLeast(7)),
+                    // Put assets
+                    "assets" to yaml.assets.map { it.trim() },
                 )
-            }
-        }
-
-        val sb = StringBuilder()
-        if (node.nodeType == Node.ELEMENT_NODE && node.parentNode.nodeName == parent) {
-            val element = node as Element
-            val tagName = element.tagName
-            sb.append("<$tagName ")
-
-            if (element.hasAttributes()) {
-                val attributes = element.attributes
-                for (i in 0 until attributes.length) {
-                    if (attributes.item(i).nodeType == Node.ATTRIBUTE_NODE) {
-                        val attribute = attributes.item(i) as Attr
-                        // Drop the "tools:sth" attributes.
-                        if (!attribute.nodeName.contains("tools:")) {
-                            sb.append("${attribute.nodeName} = \"${attribute.nodeValue}\" ")
-                        }
-                    }
-                }
-            }
 
-            if (element.hasChildNodes()) {
-                sb.append(" >\n")
-                val children = element.childNodes
-                for (j in 0 until children.length) {
-                    sb.append(generateXmlString(children.item(j), element.nodeName))
+                if (i == 0) {
+                    // We put all the elements under the activities tag. This lets us use the tags which
+                    // aren't yet added to AI2 and don't have a dedicated key in the build info JSON file.
+                    // The reason why this works is that AI compiler doesn't perform any checks on these
+                    // manifest arrays in the build info file, and just adds them to the final manifest file.
+                    fields.add("activities" to appElements)
+                    fields.add("permissions" to permissions)
                 }
-                sb.append("</$tagName>\n")
-            } else {
-                sb.append("/>\n")
+                writer.writeObject(fields)
             }
+            writer.endArray()
         }
-
-        return sb.toString()
     }
 
-    /**
-     * Stringifies all the XML elements under <application> and returns them as a list.
-     *
-     * @param doc   The AndroidManifest.xml document
-     */
-    private fun applicationElementsXmlString(doc: Document): List<String> {
-        val validTags = listOf(
-            "activity",
-            "activity-alias",
-            "meta-data",
-            "provider",
-            "service",
-            "receiver",
-            "uses-library"
+    private companion object {
+        val urlPattern: Pattern = Pattern.compile(
+            """https?://(www\.)?[-a-zA-Z0-9@:%._+~#=]{1,256}\.[a-zA-Z0-9()]{1,6}\b([-a-zA-Z0-9()!@:%_+.~#?&//=]*)"""
         )
-
-        val xmlStrings = validTags.map {
-            val res = mutableListOf<String>()
-            val elements = doc.getElementsByTagName(it)
-            for (i in 0 until elements.length) {
-                res.add(generateXmlString(elements.item(i), "application"))
-            }
-            res
-        }.flatten()
-
-        return xmlStrings.toList()
     }
 }
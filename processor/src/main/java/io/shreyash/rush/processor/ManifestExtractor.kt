@@ -0,0 +1,137 @@
+package io.shreyash.rush.processor
+
+import java.io.InputStream
+import javax.xml.stream.XMLInputFactory
+import javax.xml.stream.XMLStreamConstants
+import javax.xml.stream.XMLStreamReader
+
+/**
+ * The parts of the AndroidManifest.xml that go into the build info JSON file.
+ *
+ * @property permissions     The names (android:name) of all the <uses-permission> elements.
+ * @property appElements     The stringified elements under <application>, grouped by tag name.
+ */
+data class ManifestEntries(
+    val permissions: List<String>,
+    val appElements: Map<String, List<String>>,
+)
+
+/**
+ * Extracts [ManifestEntries] from an AndroidManifest.xml in a single streaming pass, serializing the
+ * elements of interest straight into their output strings as they are read.
+ *
+ * The elements are stringified exactly like the DOM based generator used to do it: attributes are
+ * sorted by name (the order DOM keeps them in), `tools:` attributes are dropped, only child
+ * elements are kept, and an element with any child content (even whitespace) gets a closing tag.
+ */
+class ManifestExtractor(private val appElementTags: Set<String> = APPLICATION_ELEMENTS) {
+    // Not shared between instances; the JDK's factory recycles its readers and isn't thread-safe.
+    private val factory: XMLInputFactory = XMLInputFactory.newInstance().apply {
+        setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false)
+        setProperty(XMLInputFactory.SUPPORT_DTD, false)
+        setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true)
+    }
+
+    fun extract(input: InputStream): ManifestEntries {
+        val permissions = mutableListOf<String>()
+        val appElements = appElementTags.associateWith { mutableListOf<String>() }
+
+        val reader = factory.createXMLStreamReader(input)
+        try {
+            // Names of the currently open elements.
+            val path = ArrayList<String>()
+            while (reader.hasNext()) {
+                when (reader.next()) {
+                    XMLStreamConstants.START_ELEMENT -> {
+                        val name = qualifiedName(reader.prefix, reader.localName)
+
+                        if (name == "uses-permission") {
+                            permissions.add(
+                                attributeValue(reader, "android:name")
+                                    ?: throw IllegalStateException("ERR No android:name attribute found in <uses-permission>")
+                            )
+                        }
+
+                        if (path.lastOrNull() == "application" && name in appElementTags) {
+                            // This consumes the element, including its end tag.
+                            val sb = StringBuilder()
+                            serializeElement(reader, name, sb)
+                            appElements.getValue(name).add(sb.toString())
+                        } else {
+                            path.add(name)
+                        }
+                    }
+                    XMLStreamConstants.END_ELEMENT -> path.removeAt(path.size - 1)
+                }
+            }
+        } finally {
+            reader.close()
+        }
+
+        return ManifestEntries(permissions, appElements)
+    }
+
+    /**
+     * Writes the element [name] the reader is positioned at, and all its descendant elements, to
+     * [sb]. Leaves the reader at the element's end tag.
+     */
+    private fun serializeElement(reader: XMLStreamReader, name: String, sb: StringBuilder) {
+        sb.append('<').append(name).append(' ')
+
+        val attributes = (0 until reader.attributeCount)
+            .map {
+                qualifiedName(reader.getAttributePrefix(it), reader.getAttributeLocalName(it)) to
+                        reader.getAttributeValue(it)
+            }
+            .filter { !it.first.contains("tools:") }
+            .sortedBy { it.first }
+        for ((attrName, value) in attributes) {
+            sb.append(attrName).append(" = \"").append(value).append("\" ")
+        }
+
+        var hasChildren = false
+        while (true) {
+            val event = reader.next()
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                sb.append(if (hasChildren) "</$name>\n" else "/>\n")
+                return
+            }
+
+            if (!hasChildren) {
+                sb.append(" >\n")
+                hasChildren = true
+            }
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                serializeElement(reader, qualifiedName(reader.prefix, reader.localName), sb)
+            }
+        }
+    }
+
+    private fun attributeValue(reader: XMLStreamReader, name: String): String? {
+        for (i in 0 until reader.attributeCount) {
+            if (qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)) == name) {
+                return reader.getAttributeValue(i)
+            }
+        }
+        return null
+    }
+
+    private fun qualifiedName(prefix: String?, localName: String) =
+        if (prefix.isNullOrEmpty()) localName else "$prefix:$localName"
+
+    companion object {
+        /**
+         * The <application> elements that are put in the build info file. New tags can be supported
+         * by adding them here.
+         */
+        val APPLICATION_ELEMENTS = linkedSetOf(
+            "activity",
+            "activity-alias",
+            "meta-data",
+            "provider",
+            "service",
+            "receiver",
+            "uses-library"
+        )
+    }
+}
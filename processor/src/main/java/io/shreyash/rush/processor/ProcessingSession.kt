@@ -0,0 +1,107 @@
+package io.shreyash.rush.processor
+
+import com.charleskorn.kaml.Yaml
+import io.shreyash.rush.processor.cache.ParsedFileCache
+import io.shreyash.rush.processor.model.RushYaml
+import java.io.ByteArrayInputStream
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.Collections
+import javax.annotation.processing.Messager
+import javax.tools.Diagnostic
+import kotlin.io.path.exists
+
+/**
+ * State shared by everything that runs during a single processing run. The project files are
+ * loaded lazily, at most once, no matter how many generators ask for them. Their parsed contents
+ * are also kept across runs in the same JVM, for as long as the files don't change.
+ */
+class ProcessingSession(
+    private val messager: Messager,
+    val profiler: Profiler,
+    val projectRoot: String,
+) {
+
+    /** Time taken (in nanoseconds) to load each of the project files. */
+    private val loadTimings = Collections.synchronizedMap(linkedMapOf<String, Long>())
+
+    /** The project files whose parsed contents were taken from the cache of a previous run. */
+    private val cachedFiles = Collections.synchronizedSet(mutableSetOf<String>())
+
+    /**
+     * The rush.yml file's data
+     *
+     * @throws java.io.IOException If the file can't be read for some reason.
+     */
+    val rushYaml: RushYaml by lazy {
+        val rushYml = if (Paths.get(projectRoot, "rush.yml").exists()) {
+            Paths.get(projectRoot, "rush.yml")
+        } else {
+            Paths.get(projectRoot, "rush.yaml")
+        }
+
+        timed(rushYml.fileName.toString(), Profiler.METADATA_PARSING) {
+            rushYamlCache.lookUp(rushYml)
+        }
+    }
+
+    /**
+     * The extension's AndroidManifest.xml file.
+     *
+     * Before the annotation processor runs, the CLI merges the manifests of all the AAR deps with
+     * the extension's main manifest into a single manifest file. So, if the merged manifest is
+     * found, it is used instead of the main manifest.
+     */
+    val manifestFile: Path by lazy {
+        val mergedManifest = Paths.get(projectRoot, ".rush", "build", "files", "AndroidManifest.xml")
+        if (mergedManifest.exists()) {
+            mergedManifest
+        } else {
+            Paths.get(projectRoot, "src", "AndroidManifest.xml")
+        }
+    }
+
+    /**
+     * The entries of [manifestFile] that go into the build info file.
+     *
+     * @throws javax.xml.stream.XMLStreamException If the manifest is malformed.
+     */
+    val manifest: ManifestEntries by lazy {
+        timed("AndroidManifest.xml", Profiler.MANIFEST_PARSING) {
+            manifestCache.lookUp(manifestFile)
+        }
+    }
+
+    /**
+     * Prints the time it took to load each of the project files that were used in this session, and
+     * which of them were cached.
+     */
+    fun reportLoadTimings() {
+        if (loadTimings.isEmpty()) return
+
+        val timings = loadTimings.entries.joinToString("\n") { (file, nanos) ->
+            "  - $file: ${"%.2f".format(nanos / 1_000_000.0)} ms" + if (file in cachedFiles) " (cached)" else ""
+        }
+        messager.printMessage(Diagnostic.Kind.NOTE, "Project files loaded:\n$timings")
+    }
+
+    private fun <T> timed(file: String, phase: String, load: () -> ParsedFileCache.Lookup<T>): T {
+        val start = System.nanoTime()
+        val result = load()
+        val nanos = System.nanoTime() - start
+        loadTimings[file] = nanos
+        if (result.cached) cachedFiles.add(file)
+        profiler.record(phase, nanos)
+        return result.value
+    }
+
+    private companion object {
+        val rushYamlCache = ParsedFileCache {
+            ByteArrayInputStream(it).use { input -> Yaml.default.decodeFromStream(RushYaml.serializer(), input) }
+        }
+
+        val manifestCache = ParsedFileCache {
+            ByteArrayInputStream(it).use { input -> ManifestExtractor().extract(input) }
+        }
+    }
+}
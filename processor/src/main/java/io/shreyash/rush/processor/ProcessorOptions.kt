@@ -0,0 +1,90 @@
+package io.shreyash.rush.processor
+
+/**
+ * Options that alter how the processor behaves. Every option can be passed either as an annotation
+ * processor option (`-Arush.foo=true`) or as an environment variable (`RUSH_FOO=true`), the former
+ * taking precedence.
+ */
+class ProcessorOptions(private val options: Map<String, String>) {
+
+    /**
+     * Whether the block descriptors of unchanged extension classes should be read from the cache.
+     *
+     * This is the processor's own cache, and it has nothing to do with Gradle's incremental
+     * annotation processing: the processor writes its outputs outside of the [javax.annotation.processing.Filer]
+     * and reads doc comments, so it must always see every extension class.
+     */
+    val incremental: Boolean
+        get() = flag(INCREMENTAL)
+
+    /** Whether the block descriptors of different extension classes should be built concurrently. */
+    val parallel: Boolean
+        get() = flag(PARALLEL)
+
+    /** Whether the time taken by each processing phase should be written to `.rush/build/profile.json`. */
+    val profile: Boolean
+        get() = flag(PROFILE)
+
+    /**
+     * Whether the descriptor files should be reproducible, ie, identical across builds of the same
+     * sources. See [InfoFilesGenerator].
+     */
+    val reproducible: Boolean
+        get() = flag(REPRODUCIBLE)
+
+    /**
+     * The time, in seconds since the epoch, reproducible builds mark the extensions as built at. Falls
+     * back to the standard `SOURCE_DATE_EPOCH` env var rather than `RUSH_SOURCE_DATE_EPOCH`.
+     */
+    val sourceDateEpoch: Long?
+        get() = (options[SOURCE_DATE_EPOCH] ?: System.getenv("SOURCE_DATE_EPOCH"))?.trim()?.toLongOrNull()
+
+    /**
+     * Whether a `<Extension>$$Dispatch` class, which calls the blocks of the extension without
+     * reflection, should be generated for every extension. See [DispatchGenerator].
+     */
+    val dispatch: Boolean
+        get() = flag(DISPATCH)
+
+    /**
+     * Whether assets should be hardlinked into the build directory instead of being copied. Off by
+     * default: a hardlinked asset shares its contents with the project's own file, so any tool that
+     * modifies the staged asset in place modifies the source as well. See [AssetStager].
+     */
+    val linkAssets: Boolean
+        get() = flag(LINK_ASSETS)
+
+    /** The root directory of the extension project being built. */
+    val projectRoot: String
+        get() = checkNotNull(value(PROJECT_ROOT)) { "The project root ($PROJECT_ROOT) is not set." }
+
+    /** The directory Rush is installed in. */
+    val rushHome: String
+        get() = checkNotNull(value(RUSH_HOME)) { "The Rush home directory ($RUSH_HOME) is not set." }
+
+    private fun flag(name: String): Boolean {
+        return value(name)?.trim()?.lowercase() in listOf("true", "1", "yes")
+    }
+
+    private fun value(name: String): String? = options[name] ?: System.getenv(envName(name))
+
+    /** Converts an option name like `rush.foo_bar` to its env var equivalent, `RUSH_FOO_BAR`. */
+    private fun envName(option: String) = option.replace('.', '_').uppercase()
+
+    companion object {
+        const val INCREMENTAL = "rush.incremental"
+        const val PARALLEL = "rush.parallel"
+        const val PROFILE = "rush.profile"
+        const val REPRODUCIBLE = "rush.reproducible"
+        const val SOURCE_DATE_EPOCH = "rush.source_date_epoch"
+        const val DISPATCH = "rush.dispatch"
+        const val LINK_ASSETS = "rush.link_assets"
+        const val PROJECT_ROOT = "rush.project_root"
+        const val RUSH_HOME = "rush.home"
+
+        val supported = setOf(
+            INCREMENTAL, PARALLEL, PROFILE, REPRODUCIBLE, SOURCE_DATE_EPOCH, DISPATCH, LINK_ASSETS, PROJECT_ROOT,
+            RUSH_HOME
+        )
+    }
+}
@@ -0,0 +1,109 @@
+package io.shreyash.rush.processor
+
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryType
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
+import kotlin.io.path.writeText
+
+/**
+ * Times the phases of a processing run. When disabled, [measure] simply runs the given block.
+ *
+ * Phases can nest (for eg., OptionList resolution happens during block construction), and the
+ * time of phases that run on several threads is summed across those threads.
+ *
+ * The report also includes the peak heap usage of the run, so that the memory footprint of builds
+ * of different sizes can be compared.
+ */
+class Profiler(val enabled: Boolean) {
+
+    private class Phase {
+        val calls = LongAdder()
+        val nanos = LongAdder()
+    }
+
+    private val phases = ConcurrentHashMap<String, Phase>()
+    private val counters = ConcurrentHashMap<String, LongAdder>()
+
+    private val heapPools = if (enabled) {
+        ManagementFactory.getMemoryPoolMXBeans().filter { it.type == MemoryType.HEAP }
+    } else {
+        emptyList()
+    }
+
+    init {
+        // The peaks are tracked since the JVM started, which may have been long before this run
+        // (for eg., in the processor daemon).
+        heapPools.forEach { it.resetPeakUsage() }
+    }
+
+    /** Runs [block] and adds the time it took to [phase]. */
+    inline fun <T> measure(phase: String, block: () -> T): T {
+        if (!enabled) return block()
+
+        val start = System.nanoTime()
+        try {
+            return block()
+        } finally {
+            record(phase, System.nanoTime() - start)
+        }
+    }
+
+    /** Adds [nanos] to [phase], for work that was timed elsewhere. */
+    fun record(phase: String, nanos: Long) {
+        if (!enabled) return
+        phases.computeIfAbsent(phase) { Phase() }.apply {
+            calls.increment()
+            this.nanos.add(nanos)
+        }
+    }
+
+    /** Adds [delta] to the counter [name], for eg., the number of blocks processed. */
+    fun count(name: String, delta: Long = 1) {
+        if (!enabled) return
+        counters.computeIfAbsent(name) { LongAdder() }.add(delta)
+    }
+
+    /**
+     * Writes the profiling report to [file] as JSON. Phases and counters are sorted by name and the
+     * JSON is pretty printed, so that reports from different builds can be diffed line by line.
+     */
+    fun writeReport(file: Path) {
+        val sb = StringBuilder("{\n  \"phases\": {")
+        phases.toSortedMap().entries.forEachIndexed { i, (name, phase) ->
+            if (i > 0) sb.append(',')
+            val millis = "%.3f".format(Locale.ROOT, phase.nanos.sum() / 1_000_000.0)
+            sb.append("\n    \"$name\": { \"calls\": ${phase.calls.sum()}, \"millis\": $millis }")
+        }
+        sb.append("\n  },\n  \"counters\": {")
+        counters.toSortedMap().entries.forEachIndexed { i, (name, count) ->
+            if (i > 0) sb.append(',')
+            sb.append("\n    \"$name\": ${count.sum()}")
+        }
+        sb.append("\n  },\n  \"memory\": {")
+        // The pools don't necessarily peak at the same time, so their sum is an upper bound.
+        sb.append("\n    \"peakHeapBytes\": ${heapPools.sumOf { it.peakUsage.used }}")
+        sb.append("\n  }\n}\n")
+
+        Files.createDirectories(file.parent)
+        file.writeText(sb.toString())
+    }
+
+    companion object {
+        const val ELEMENT_GROUPING = "element-grouping"
+        const val BLOCK_CONSTRUCTION = "block-construction"
+        const val CHECKS = "checks"
+        const val HELPER_RESOLUTION = "helper-resolution"
+        const val JSON_BUILDING = "json-building"
+        const val MARKDOWN_RENDERING = "markdown-rendering"
+        const val ICON_COPY = "icon-copy"
+        const val ASSET_STAGING = "asset-staging"
+        const val METADATA_PARSING = "metadata-parsing"
+        const val MANIFEST_PARSING = "manifest-parsing"
+        const val FILE_WRITING = "file-writing"
+        const val DISPATCH_GENERATION = "dispatch-generation"
+    }
+}
@@ -1,16 +1,26 @@
 package io.shreyash.rush.processor.block
 
-import io.shreyash.rush.processor.util.yailTypeOf
+import io.shreyash.rush.processor.util.YailTypeConvertor
 import shaded.org.json.JSONObject
 import java.lang.Deprecated
 import javax.lang.model.element.ExecutableElement
 import kotlin.String
 
-abstract class Block(val element: ExecutableElement) {
+/**
+ * The model of a block. Its attributes are computed lazily, at most once, and shared between the
+ * checks and the JSON representation.
+ *
+ * Computing the attributes goes through javac, which is not thread-safe, so they must be forced
+ * with [resolve] on the processor thread before the block is handed to another thread.
+ */
+abstract class Block(
+    val element: ExecutableElement,
+    optionLists: OptionListExtractor,
+    yailTypes: YailTypeConvertor,
+) {
 
     /** Name of this block. */
-    val name: String
-        get() = element.simpleName.toString()
+    val name: String = element.simpleName.toString()
 
     /** The description of this block */
     abstract val description: String?
@@ -18,20 +28,32 @@ abstract class Block(val element: ExecutableElement) {
     /**
      * @return YAIL equivalent of the return type of this block.
      */
-    open val returnType = if (element.returnType.toString() != "void") {
-        yailTypeOf(element.returnType.toString(), HelperType.tryFrom(element) != null)
-    } else {
-        null
+    open val returnType: String? by lazy(LazyThreadSafetyMode.NONE) {
+        if (element.returnType.toString() != "void") {
+            yailTypes.yailTypeOf(element.returnType, HelperType.tryFrom(element) != null)
+        } else {
+            null
+        }
     }
 
-    val helper = Helper.tryFrom(element)
+    val helper: Helper? by lazy(LazyThreadSafetyMode.NONE) { Helper.tryFrom(element, optionLists) }
 
     /** Whether this block is deprecated */
-    val deprecated = element.getAnnotation(Deprecated::class.java) != null
+    val deprecated: Boolean by lazy(LazyThreadSafetyMode.NONE) {
+        element.getAnnotation(Deprecated::class.java) != null
+    }
 
-    /** Checks that are supposed to be performed on this block */
+    /** Checks that are supposed to be performed on this block. Called once, right after it is created. */
     abstract fun runChecks()
 
+    /** Computes all the attributes used by [asJsonObject] that are not computed yet. */
+    open fun resolve() {
+        description
+        returnType
+        helper
+        deprecated
+    }
+
     /**
      * @return JSON representation of this block that is later used to construct the `components.json`
      * descriptor file.
@@ -39,17 +61,28 @@ abstract class Block(val element: ExecutableElement) {
     abstract fun asJsonObject(): JSONObject
 }
 
-abstract class ParameterizedBlock(element: ExecutableElement) : Block(element) {
+abstract class ParameterizedBlock(
+    element: ExecutableElement,
+    optionLists: OptionListExtractor,
+    yailTypes: YailTypeConvertor,
+) : Block(element, optionLists, yailTypes) {
     /**
      * @return The parameters (or arguments) of this block.
      */
-    val params = this.element.parameters.map {
-        val helper = Helper.tryFrom(it)
-        BlockParam(
-            it.simpleName.toString(),
-            yailTypeOf(it.asType().toString(), helper != null),
-            helper
-        )
+    val params: List<BlockParam> by lazy(LazyThreadSafetyMode.NONE) {
+        this.element.parameters.map {
+            val helper = Helper.tryFrom(it, optionLists)
+            BlockParam(
+                it.simpleName.toString(),
+                yailTypes.yailTypeOf(it.asType(), helper != null),
+                helper
+            )
+        }
+    }
+
+    override fun resolve() {
+        super.resolve()
+        params
     }
 }
 
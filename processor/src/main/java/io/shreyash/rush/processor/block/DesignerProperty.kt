@@ -1,6 +1,7 @@
 package io.shreyash.rush.processor.block
 
 import com.google.appinventor.components.annotations.DesignerProperty
+import io.shreyash.rush.processor.util.YailTypeConvertor
 import shaded.org.json.JSONObject
 import javax.annotation.processing.Messager
 import javax.lang.model.element.Element
@@ -10,18 +11,21 @@ import javax.tools.Diagnostic
 class DesignerProperty(
     element: ExecutableElement,
     private val messager: Messager,
-    private val properties: List<Property>,
-) : Block(element) {
-    init {
-        runChecks()
-    }
+    private val properties: PropertyIndex,
+    optionLists: OptionListExtractor,
+    yailTypes: YailTypeConvertor,
+) : Block(element, optionLists, yailTypes) {
+    private val annotation = element.getAnnotation(DesignerProperty::class.java)
 
     override val description: Nothing? = null
 
+    override fun resolve() {
+        // The JSON representation only needs the annotation, which has been read already.
+    }
+
     override fun runChecks() {
         // Check if the corresponding setter simple property exists.
-        val setterExist = properties.any { it.name == name }
-        if (!setterExist) {
+        if (name !in properties) {
             messager.printMessage(
                 Diagnostic.Kind.ERROR,
                 "Unable to find corresponding @SimpleProperty annotation for designer property '$name'."
@@ -39,13 +43,10 @@ class DesignerProperty(
      *  "editorType": "text"
      * }
      */
-    override fun asJsonObject(): JSONObject {
-        val annotation = element.getAnnotation(DesignerProperty::class.java)
-        return JSONObject()
-            .put("name", name)
-            .put("editorType", annotation.editorType)
-            .put("editorArgs", annotation.editorArgs)
-            .put("defaultValue", annotation.defaultValue)
-            .put("alwaysSend", annotation.alwaysSend.toString())
-    }
+    override fun asJsonObject(): JSONObject = JSONObject()
+        .put("name", name)
+        .put("editorType", annotation.editorType)
+        .put("editorArgs", annotation.editorArgs)
+        .put("defaultValue", annotation.defaultValue)
+        .put("alwaysSend", annotation.alwaysSend.toString())
 }
@@ -1,6 +1,8 @@
 package io.shreyash.rush.processor.block
 
 import com.google.appinventor.components.annotations.SimpleEvent
+import io.shreyash.rush.processor.util.Markdown
+import io.shreyash.rush.processor.util.YailTypeConvertor
 import io.shreyash.rush.processor.util.isCamelCase
 import io.shreyash.rush.processor.util.isPascalCase
 import shaded.org.json.JSONObject
@@ -13,20 +15,14 @@ class Event(
     element: ExecutableElement,
     private val messager: Messager,
     private val elementUtils: Elements,
-) : ParameterizedBlock(element) {
-    init {
-        runChecks()
-    }
-
-    override val description: String
-        get() {
-            val desc = this.element.getAnnotation(SimpleEvent::class.java).description.let {
-                it.ifBlank {
-                    elementUtils.getDocComment(element) ?: ""
-                }
-            }
-            return desc
+    optionLists: OptionListExtractor,
+    yailTypes: YailTypeConvertor,
+) : ParameterizedBlock(element, optionLists, yailTypes) {
+    override val description: String by lazy(LazyThreadSafetyMode.NONE) {
+        element.getAnnotation(SimpleEvent::class.java).description.ifBlank {
+            elementUtils.getDocComment(element) ?: ""
         }
+    }
 
     override fun runChecks() {
         // Check method name
@@ -71,6 +67,6 @@ class Event(
     override fun asJsonObject(): JSONObject = JSONObject()
         .put("deprecated", deprecated.toString())
         .put("name", name)
-        .put("description", description)
+        .put("description", Markdown.render(description))
         .put("params", params.map { it.asJsonObject() })
 }
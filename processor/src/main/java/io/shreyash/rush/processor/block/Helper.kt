@@ -2,19 +2,14 @@ package io.shreyash.rush.processor.block
 
 import com.google.appinventor.components.annotations.Asset
 import com.google.appinventor.components.annotations.Options
-import com.google.appinventor.components.common.Default
 import shaded.org.json.JSONArray
 import shaded.org.json.JSONObject
-import java.lang.reflect.Method
-import java.net.URLClassLoader
-import java.nio.file.Paths
 import javax.lang.model.element.Element
 import javax.lang.model.element.ExecutableElement
 import javax.lang.model.element.TypeElement
 import javax.lang.model.type.DeclaredType
 import javax.lang.model.type.MirroredTypeException
 import javax.lang.model.type.TypeKind
-import javax.lang.model.type.TypeMirror
 
 enum class HelperType {
     OPTION_LIST, ASSET;
@@ -51,7 +46,7 @@ data class Helper(
     }
 
     companion object {
-        fun tryFrom(element: Element): Helper? {
+        fun tryFrom(element: Element, optionLists: OptionListExtractor): Helper? {
             val helperType = HelperType.tryFrom(element)
             return when (helperType) {
                 HelperType.ASSET -> {
@@ -65,7 +60,7 @@ data class Helper(
                 HelperType.OPTION_LIST -> {
                     val optionsAnnotation = element.getAnnotation(Options::class.java)
 
-                    val optionListEnumName = if (optionsAnnotation != null) {
+                    val optionListEnum = if (optionsAnnotation != null) {
                         var elem: Element? = null
                         try {
                             // This will always throw. For more info: https://stackoverflow.com/a/10167558/12401482
@@ -75,20 +70,13 @@ data class Helper(
                         }
 
                         // This will never be null, don't listen to IntelliJ
-                        elem!!.asType().toString()
-                    } else if (element is ExecutableElement) {
-                        element.returnType.toString()
+                        elem!! as TypeElement
                     } else {
-                        element.asType().toString()
+                        val type = if (element is ExecutableElement) element.returnType else element.asType()
+                        (type as DeclaredType).asElement() as TypeElement
                     }
 
-                    val data = if (HelperSingleton.optionListCache.containsKey(optionListEnumName)) {
-                        HelperSingleton.optionListCache[optionListEnumName]!!
-                    } else {
-                        OptionListData(element).apply {
-                            HelperSingleton.optionListCache.putIfAbsent(optionListEnumName, this)
-                        }
-                    }
+                    val data = optionLists.optionListOf(optionListEnum)
 
                     val helper = Helper(helperType, data)
                     helper
@@ -117,34 +105,16 @@ class AssetData(private val fileExtensions: Array<String> = arrayOf()) : HelperD
     }
 }
 
-private object HelperSingleton {
-    /**
-     * This stores [OptionListData]s of enums that have already been processed.
-     */
-    val optionListCache = mutableMapOf<String, OptionListData>()
-
-    val loader: ClassLoader
-
-    init {
-        val classesDir = Paths.get(System.getenv("RUSH_PROJECT_ROOT"), ".rush", "build", "classes")
-        val libDir = Paths.get(System.getenv("RUSH_HOME"), "libs")
-
-        val annotationsJar = Paths.get(libDir.toString(), "annotations.jar")
-        val runtimeJar = Paths.get(libDir.toString(), "runtime.jar")
-
-        // TODO: Should the external dependencies be added as well?
-
-        loader = URLClassLoader(
-            arrayOf(
-                classesDir.toUri().toURL(),
-                annotationsJar.toUri().toURL(),
-                runtimeJar.toUri().toURL()
-            )
-        )
-    }
-}
-
-class OptionListData(private val element: Element) : HelperData() {
+/**
+ * Data of an OptionList helper, as extracted by [OptionListExtractor]. This is free of any element
+ * tree references, so [asJsonObject] can be called from any thread.
+ */
+class OptionListData(
+    private val className: String,
+    private val options: List<Option>,
+    private val underlyingType: String,
+    private val defaultOption: String,
+) : HelperData() {
 
     data class Option(
         val deprecated: Boolean,
@@ -160,61 +130,13 @@ class OptionListData(private val element: Element) : HelperData() {
         }
     }
 
-    private lateinit var defaultOption: String
-
-    private lateinit var underlyingType: String
-
-    private val elementType: TypeMirror = if (element is ExecutableElement) {
-        element.returnType
-    } else {
-        element.asType()
-    }
-
-    private fun options(): List<JSONObject> {
-        val optionListEnumName = elementType.toString()
-        val optionListEnum: Class<*>
-        val toValueMethod: Method
-        try {
-            optionListEnum = HelperSingleton.loader.loadClass(optionListEnumName)
-            toValueMethod = optionListEnum.getDeclaredMethod("toUnderlyingValue")
-        } catch (e: Exception) {
-            throw e
-        }
-
-        if (!optionListEnum.isEnum) {
-            throw Exception("OptionList is not an enum: $optionListEnumName")
-        }
-
-        val enumConsts =
-            optionListEnum.enumConstants.associate { Pair(it.toString(), toValueMethod.invoke(it).toString()) }
-
-        // We need the enum elements only for finding which enum const has the Default annotation.
-        val enclosedElements = (elementType as DeclaredType).asElement().enclosedElements
-        val enumElements = enclosedElements.filter { enumConsts.containsKey(it.simpleName.toString()) }
-
-        defaultOption = enumElements.singleOrNull { it.getAnnotation(Default::class.java) != null }
-            ?.simpleName?.toString() ?: enumConsts.keys.first()
-
-        // The typeName property returns name like this: com.google.appinventor.components.common.OptionList<java.lang.String>
-        // We only need the generic type's name, ie, the part inside <>.
-        underlyingType = optionListEnum.genericInterfaces.first().typeName.split("[<>]".toPattern())[1]
-
-        return enumConsts.map {
-            Option(
-                deprecated = element.getAnnotation(Deprecated::class.java) != null,
-                name = it.key,
-                value = it.value,
-            ).asJsonObject()
-        }
-    }
-
     override fun asJsonObject(): JSONObject {
-        val enumName = elementType.toString().split(".").last()
+        val enumName = className.split(".").last()
         return JSONObject()
-            .put("className", elementType.toString())
+            .put("className", className)
             .put("key", enumName)
             .put("tag", enumName)
-            .put("options", options())
+            .put("options", options.map { it.asJsonObject() })
             .put("underlyingType", underlyingType)
             .put("defaultOpt", defaultOption)
     }
@@ -0,0 +1,306 @@
+package io.shreyash.rush.processor.block
+
+import com.google.appinventor.components.common.Default
+import com.sun.source.tree.AssignmentTree
+import com.sun.source.tree.ExpressionStatementTree
+import com.sun.source.tree.ExpressionTree
+import com.sun.source.tree.IdentifierTree
+import com.sun.source.tree.LiteralTree
+import com.sun.source.tree.MemberSelectTree
+import com.sun.source.tree.MethodTree
+import com.sun.source.tree.NewClassTree
+import com.sun.source.tree.ParenthesizedTree
+import com.sun.source.tree.ReturnTree
+import com.sun.source.tree.Tree
+import com.sun.source.tree.UnaryTree
+import com.sun.source.tree.VariableTree
+import com.sun.source.util.TreePath
+import com.sun.source.util.Trees
+import io.shreyash.rush.processor.ProcessorOptions
+import io.shreyash.rush.processor.Profiler
+import java.io.IOException
+import java.net.URLClassLoader
+import java.nio.file.Paths
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import javax.annotation.processing.Messager
+import javax.annotation.processing.ProcessingEnvironment
+import javax.lang.model.element.Element
+import javax.lang.model.element.ElementKind
+import javax.lang.model.element.ExecutableElement
+import javax.lang.model.element.TypeElement
+import javax.lang.model.element.VariableElement
+import javax.lang.model.type.DeclaredType
+import javax.tools.Diagnostic
+import javax.tools.StandardLocation
+
+/**
+ * Extracts the options of OptionList enums.
+ *
+ * The names of the enum constants and their underlying values are read straight from the source
+ * tree of the enum: the underlying value of a constant is the constructor argument that ends up in
+ * the field returned by `toUnderlyingValue()`. When that isn't possible, for eg., when the enum
+ * comes from a compiled library or `toUnderlyingValue()` computes its result, the enum is loaded
+ * reflectively from the project's classes instead.
+ *
+ * Extracted options are cached for as long as this extractor lives, which is the lifetime of the
+ * processing environment it was created for. Enums can't change within a processing environment,
+ * so cache entries are simply keyed by the enum's qualified name.
+ *
+ * The cache is deliberately not shared with other processing runs, not even in the processor
+ * daemon: enums that come from jars have no source tree, so their fingerprint can't tell whether
+ * their values changed in between.
+ */
+class OptionListExtractor(
+    processingEnv: ProcessingEnvironment,
+    private val profiler: Profiler,
+    private val options: ProcessorOptions,
+) {
+    private val elementUtils = processingEnv.elementUtils
+    private val filer = processingEnv.filer
+
+    private val cache = ConcurrentHashMap<String, OptionListData>()
+    private val fingerprints = ConcurrentHashMap<String, String>()
+    private val hits = AtomicInteger()
+    private val misses = AtomicInteger()
+
+    private val trees: Trees? = try {
+        Trees.instance(processingEnv)
+    } catch (e: IllegalArgumentException) {
+        // Not running inside javac, the source trees are not available.
+        null
+    }
+
+    /**
+     * @return The [OptionListData] of [enumElement], from the cache if it was already extracted.
+     * @throws IllegalStateException If [enumElement] is not an OptionList enum.
+     */
+    fun optionListOf(enumElement: TypeElement): OptionListData {
+        val name = enumElement.qualifiedName.toString()
+        cache[name]?.let {
+            hits.incrementAndGet()
+            return it
+        }
+
+        misses.incrementAndGet()
+        val data = profiler.measure(Profiler.HELPER_RESOLUTION) { extract(enumElement) }
+        cache[name] = data
+        return data
+    }
+
+    /**
+     * @return A fingerprint of the source of [enumElement], computed at most once per enum. For
+     * enums that are not part of the sources being compiled, the fingerprint covers their class
+     * file instead or, if that can't be read either, their constants and the constants' annotations.
+     */
+    fun sourceFingerprintOf(enumElement: TypeElement): String {
+        return fingerprints.computeIfAbsent(enumElement.qualifiedName.toString()) {
+            val source = trees?.getTree(enumElement)?.toString()?.toByteArray()
+                ?: classFileOf(enumElement)
+                ?: enumElement.enclosedElements
+                    .filter { it.kind == ElementKind.ENUM_CONSTANT }
+                    .joinToString("\n") { "${it.annotationMirrors} ${it.simpleName}" }
+                    .toByteArray()
+
+            val digest = MessageDigest.getInstance("SHA-256").digest(source)
+            digest.joinToString("") { "%02x".format(it) }
+        }
+    }
+
+    /** @return The contents of the class file of [enumElement] on the classpath, if it can be read. */
+    private fun classFileOf(enumElement: TypeElement): ByteArray? {
+        val binaryName = elementUtils.getBinaryName(enumElement).toString()
+        return try {
+            filer.getResource(
+                StandardLocation.CLASS_PATH,
+                binaryName.substringBeforeLast('.', ""),
+                binaryName.substringAfterLast('.') + ".class"
+            ).openInputStream().use { it.readBytes() }
+        } catch (e: IOException) {
+            null
+        } catch (e: IllegalArgumentException) {
+            // The filer doesn't support reading from the classpath.
+            null
+        }
+    }
+
+    /** Prints how many OptionList lookups were served from the cache. */
+    fun reportCacheStats(messager: Messager) {
+        val hits = hits.get()
+        val misses = misses.get()
+        if (hits + misses == 0) return
+
+        messager.printMessage(
+            Diagnostic.Kind.NOTE,
+            "OptionList cache: $hits hit(s), $misses miss(es), ${cache.size} enum(s) cached."
+        )
+    }
+
+    private fun extract(enumElement: TypeElement): OptionListData {
+        val className = enumElement.qualifiedName.toString()
+        if (enumElement.kind != ElementKind.ENUM) {
+            throw IllegalStateException("OptionList is not an enum: $className")
+        }
+
+        // The type argument of OptionList<T>, for eg. java.lang.String.
+        val underlyingType = enumElement.interfaces
+            .map { it as DeclaredType }
+            .firstOrNull { it.asElement().simpleName.toString() == "OptionList" }
+            ?.typeArguments?.firstOrNull()?.toString()
+            ?: throw IllegalStateException("Enum $className doesn't implement OptionList")
+
+        val constants = enumElement.enclosedElements.filter { it.kind == ElementKind.ENUM_CONSTANT }
+        val values = valuesFromSource(enumElement, constants, underlyingType)
+            ?: valuesFromClass(elementUtils.getBinaryName(enumElement).toString())
+
+        val defaultOption = constants.singleOrNull { it.getAnnotation(Default::class.java) != null }
+            ?.simpleName?.toString() ?: values.keys.first()
+
+        val options = constants.map {
+            val name = it.simpleName.toString()
+            OptionListData.Option(
+                deprecated = it.getAnnotation(java.lang.Deprecated::class.java) != null,
+                name = name,
+                value = values[name] ?: throw IllegalStateException("No value found for $className.$name"),
+            )
+        }
+
+        return OptionListData(className, options, underlyingType, defaultOption)
+    }
+
+    /**
+     * @return The underlying values of [constants], or `null` if any of them couldn't be worked out
+     * from the source tree.
+     */
+    private fun valuesFromSource(
+        enumElement: TypeElement,
+        constants: List<Element>,
+        underlyingType: String
+    ): Map<String, String>? {
+        val trees = trees ?: return null
+        val unit = trees.getPath(enumElement)?.compilationUnit ?: return null
+        val argIndex = underlyingValueArgIndex(trees, enumElement) ?: return null
+
+        val values = linkedMapOf<String, String>()
+        for (constant in constants) {
+            val init = (trees.getTree(constant) as? VariableTree)?.initializer as? NewClassTree ?: return null
+            val arg = init.arguments.getOrNull(argIndex) ?: return null
+            val value = constantValueOf(trees, TreePath.getPath(unit, arg), arg) ?: return null
+            values[constant.simpleName.toString()] = asUnderlyingValue(value, underlyingType) ?: return null
+        }
+        return values
+    }
+
+    /**
+     * @return The index of the constructor parameter that is returned by `toUnderlyingValue()`, or
+     * `null` if that can't be determined. Only the common shape of OptionList enums is understood:
+     * a single constructor that assigns a parameter to a field, and `toUnderlyingValue()` returning
+     * that field.
+     */
+    private fun underlyingValueArgIndex(trees: Trees, enumElement: TypeElement): Int? {
+        val methods = enumElement.enclosedElements.filterIsInstance<ExecutableElement>()
+
+        val toValue = methods.singleOrNull {
+            it.kind == ElementKind.METHOD && it.simpleName.contentEquals("toUnderlyingValue") && it.parameters.isEmpty()
+        } ?: return null
+        val returned = (trees.getTree(toValue)?.body?.statements?.singleOrNull() as? ReturnTree)?.expression
+        val field = nameOfField(returned) ?: return null
+
+        val constructor = methods.singleOrNull { it.kind == ElementKind.CONSTRUCTOR } ?: return null
+        val constructorTree: MethodTree = trees.getTree(constructor) ?: return null
+        val paramNames = constructorTree.parameters.map { it.name.toString() }
+
+        for (statement in constructorTree.body?.statements.orEmpty()) {
+            val assignment = (statement as? ExpressionStatementTree)?.expression as? AssignmentTree ?: continue
+            if (nameOfField(assignment.variable) != field) continue
+
+            val param = (assignment.expression as? IdentifierTree)?.name?.toString() ?: return null
+            return paramNames.indexOf(param).takeIf { it >= 0 }
+        }
+        return null
+    }
+
+    /** @return The name of the field [tree] refers to, if it is of the form `foo` or `this.foo`. */
+    private fun nameOfField(tree: ExpressionTree?): String? = when (tree) {
+        is IdentifierTree -> tree.name.toString()
+        is MemberSelectTree -> if (tree.expression.toString() == "this") tree.identifier.toString() else null
+        else -> null
+    }
+
+    /** @return The compile time constant value of [tree], or `null` if it is not a constant. */
+    private fun constantValueOf(trees: Trees, path: TreePath?, tree: ExpressionTree): Any? = when (tree) {
+        is LiteralTree -> tree.value
+        is ParenthesizedTree -> constantValueOf(trees, path?.let { TreePath(it, tree.expression) }, tree.expression)
+        is UnaryTree -> {
+            val operand = constantValueOf(trees, path?.let { TreePath(it, tree.expression) }, tree.expression)
+            when {
+                tree.kind == Tree.Kind.UNARY_MINUS && operand is Int -> -operand
+                tree.kind == Tree.Kind.UNARY_MINUS && operand is Long -> -operand
+                tree.kind == Tree.Kind.UNARY_MINUS && operand is Float -> -operand
+                tree.kind == Tree.Kind.UNARY_MINUS && operand is Double -> -operand
+                tree.kind == Tree.Kind.UNARY_PLUS && operand is Number -> operand
+                else -> null
+            }
+        }
+        // References to constants, for eg. Component.ALIGNMENT_NORMAL
+        else -> path?.let { (trees.getElement(it) as? VariableElement)?.constantValue }
+    }
+
+    /**
+     * @return [value] converted to [underlyingType] and stringified the way `toString()` of the
+     * boxed type would, or `null` if the conversion isn't supported.
+     */
+    private fun asUnderlyingValue(value: Any, underlyingType: String): String? {
+        val number = value as? Number ?: (value as? Char)?.code
+        return when (underlyingType) {
+            "java.lang.String" -> value as? String
+            "java.lang.Boolean" -> (value as? Boolean)?.toString()
+            "java.lang.Character" -> (value as? Char)?.toString()
+            "java.lang.Integer" -> number?.toInt()?.toString()
+            "java.lang.Long" -> number?.toLong()?.toString()
+            "java.lang.Short" -> number?.toShort()?.toString()
+            "java.lang.Byte" -> number?.toByte()?.toString()
+            "java.lang.Float" -> number?.toFloat()?.toString()
+            "java.lang.Double" -> number?.toDouble()?.toString()
+            else -> null
+        }
+    }
+
+    /** Falls back to loading the enum [className] from the project's compiled classes. */
+    private fun valuesFromClass(className: String): Map<String, String> {
+        val optionListEnum = loader.loadClass(className)
+        if (!optionListEnum.isEnum) {
+            throw IllegalStateException("OptionList is not an enum: $className")
+        }
+
+        val toValueMethod = optionListEnum.getDeclaredMethod("toUnderlyingValue")
+        // Keyed by the constant's name, not by toString(), which the enum may override.
+        return optionListEnum.enumConstants.associate {
+            Pair((it as Enum<*>).name, toValueMethod.invoke(it).toString())
+        }
+    }
+
+    /**
+     * Class loader for the project's classes. Created only when an enum can't be resolved from
+     * source, which spares most builds from opening the runtime and annotations jars. It is not
+     * shared with other processing runs, as the project's classes may have changed since.
+     */
+    private val loader: ClassLoader by lazy {
+        val classesDir = Paths.get(options.projectRoot, ".rush", "build", "classes")
+        val libDir = Paths.get(options.rushHome, "libs")
+
+        val annotationsJar = Paths.get(libDir.toString(), "annotations.jar")
+        val runtimeJar = Paths.get(libDir.toString(), "runtime.jar")
+
+        // TODO: Should the external dependencies be added as well?
+
+        URLClassLoader(
+            arrayOf(
+                classesDir.toUri().toURL(),
+                annotationsJar.toUri().toURL(),
+                runtimeJar.toUri().toURL()
+            )
+        )
+    }
+}
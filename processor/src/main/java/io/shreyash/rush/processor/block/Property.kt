@@ -1,8 +1,9 @@
 package io.shreyash.rush.processor.block
 
 import com.google.appinventor.components.annotations.SimpleProperty
+import io.shreyash.rush.processor.util.Markdown
+import io.shreyash.rush.processor.util.YailTypeConvertor
 import io.shreyash.rush.processor.util.isPascalCase
-import io.shreyash.rush.processor.util.yailTypeOf
 import shaded.org.json.JSONObject
 import javax.annotation.processing.Messager
 import javax.lang.model.element.ExecutableElement
@@ -20,26 +21,52 @@ object PropertyAccessType {
 class Property(
     element: ExecutableElement,
     private val messager: Messager,
-    private val priorProperties: MutableList<Property>,
+    private val index: PropertyIndex,
     private val elementUtils: Elements,
-) : Block(element) {
-    private val accessType: String
+    optionLists: OptionListExtractor,
+    yailTypes: YailTypeConvertor,
+) : Block(element, optionLists, yailTypes) {
+    private val annotation = element.getAnnotation(SimpleProperty::class.java)
 
-    init {
-        runChecks()
-        accessType = accessType()
+    /** Whether this property is a setter (returns nothing) or a getter. */
+    val isSetter = element.returnType.toString() == "void"
+
+    override val description: String by lazy(LazyThreadSafetyMode.NONE) {
+        annotation.description.ifBlank {
+            elementUtils.getDocComment(element) ?: ""
+        }
     }
 
-    override val description: String
-        get() {
-            val desc = this.element.getAnnotation(SimpleProperty::class.java).description.let {
-                it.ifBlank {
-                    elementUtils.getDocComment(element) ?: ""
-                }
-            }
-            return desc
+    /**
+     * If this is a setter type property, the type of the value it accepts, else if it is a getter,
+     * it's return type.
+     */
+    override val returnType: String by lazy(LazyThreadSafetyMode.NONE) {
+        val returnType = this.element.returnType
+        // If the property is of setter type, the JSON property "type" is equal to the type of
+        // parameter the setter expects.
+        val (elem, type) = if (isSetter) {
+            this.element.parameters[0].let { Pair(it, it.asType()) }
+        } else if (returnType is DeclaredType) {
+            Pair(returnType.asElement(), returnType)
+        } else {
+            Pair(element, returnType)
         }
 
+        yailTypes.yailTypeOf(type, HelperType.tryFrom(elem) != null)
+    }
+
+    /**
+     * Whether this property is readable, writable or both, based on its partner in the [index].
+     * This must not be accessed before all the properties of the extension have been indexed.
+     */
+    private val accessType: String by lazy(LazyThreadSafetyMode.NONE) { accessType() }
+
+    override fun resolve() {
+        super.resolve()
+        accessType
+    }
+
     override fun runChecks() {
         if (!isPascalCase(name)) {
             messager.printMessage(
@@ -55,7 +82,6 @@ class Property(
             )
         }
 
-        val isSetter = this.element.returnType.toString() == "void"
         val noOfParams = this.element.parameters.size
 
         // Total numbers of parameters for setters must be 1 and for getter must be 0.
@@ -71,11 +97,10 @@ class Property(
             )
         }
 
-        val partnerProp = priorProperties.firstOrNull {
-            it.name == name && it !== this
-        }
-        // Return types of getters and setters must match
-        if (partnerProp != null && partnerProp.returnType != returnType) {
+        // Return types of getters and setters must match. The pair is checked from the setter so
+        // that a mismatch is reported once, whichever of the two is declared first.
+        val getter = if (isSetter) index.partnerOf(this) else null
+        if (getter != null && getter.returnType != returnType) {
             messager.printMessage(
                 Diagnostic.Kind.ERROR,
                 "Inconsistent types across getter and setter for simple property \"$name\"."
@@ -83,33 +108,6 @@ class Property(
         }
     }
 
-    /**
-     * @return If this is a setter type property, the type of the value it accepts, else if it is a
-     * getter, it's return type.
-     */
-    override val returnType: String
-        get() {
-            val returnType = this.element.returnType
-            // If the property is of setter type, the JSON property "type" is equal to the type of
-            // parameter the setter expects.
-            val elem = if (returnType.toString() == "void") {
-                this.element.parameters[0]
-            } else if (returnType is DeclaredType) {
-                returnType.asElement()
-            } else {
-                element
-            }
-
-            // Primitive types when converted to string seem to have () in-front of them. This only
-            // happens when `elem` is set using `returnType.asElement()` above.
-            val typeName = elem.asType().toString().replace("()", "")
-
-            HelperType.tryFrom(elem)?.apply {
-                return yailTypeOf(typeName, true)
-            }
-            return yailTypeOf(typeName, false)
-        }
-
     /**
      * @return JSON representation of this property.
      * {
@@ -122,7 +120,7 @@ class Property(
      */
     override fun asJsonObject(): JSONObject = JSONObject()
         .put("name", name)
-        .put("description", description)
+        .put("description", Markdown.render(description))
         .put("deprecated", deprecated.toString())
         .put("type", returnType)
         .put("rw", accessType)
@@ -132,34 +130,18 @@ class Property(
      * @return The access type of the current property.
      * */
     private fun accessType(): String {
-        val invisible = !this.element.getAnnotation(SimpleProperty::class.java).userVisible
-        if (invisible) {
+        if (!annotation.userVisible) {
             return PropertyAccessType.INVISIBLE
         }
 
-        var accessType = if (this.element.returnType.toString() == "void") {
-            PropertyAccessType.WRITE
-        } else {
-            PropertyAccessType.READ
-        }
-
-        // If the current property is a setter, this could be a getter and vice versa.
-        val partnerProp = priorProperties.firstOrNull {
-            it.name == name && it !== this
-        }
-
         // If the partner prop exists and is not invisible, then it means that both getter and setter
-        // exists for this prop. In that case, we set the access type to read-write which tells AI2
-        // to render two blocks -- one getter and one setter.
-        if (partnerProp != null && partnerProp.accessType != PropertyAccessType.INVISIBLE) {
-            accessType = PropertyAccessType.READ_WRITE
+        // exists for this prop. In that case, the access type is read-write which tells AI2 to render
+        // two blocks -- one getter and one setter.
+        val partnerProp = index.partnerOf(this)
+        return when {
+            partnerProp != null && partnerProp.annotation.userVisible -> PropertyAccessType.READ_WRITE
+            isSetter -> PropertyAccessType.WRITE
+            else -> PropertyAccessType.READ
         }
-
-        // Remove the partner prop from the prior props lst. This is necessary because AI2 doesn't
-        // expect getter and setter to be defined separately. It checks the access type to decide
-        // whether to generate getter (read-only), setter (write-only), both (read-write) or none
-        // (invisible).
-        priorProperties.remove(partnerProp)
-        return accessType
     }
 }
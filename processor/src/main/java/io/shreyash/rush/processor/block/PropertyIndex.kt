@@ -0,0 +1,33 @@
+package io.shreyash.rush.processor.block
+
+/**
+ * The simple properties of an extension, indexed by name. Each getter is paired with the setter of
+ * the same name (if any), so that a property can find its partner without scanning the others.
+ */
+class PropertyIndex {
+    private class Accessors {
+        var getter: Property? = null
+        var setter: Property? = null
+    }
+
+    private val byName = HashMap<String, Accessors>()
+
+    /** Adds [property] to the index. Only the first getter and setter of a name are paired. */
+    fun add(property: Property) {
+        val accessors = byName.getOrPut(property.name) { Accessors() }
+        if (property.isSetter) {
+            if (accessors.setter == null) accessors.setter = property
+        } else if (accessors.getter == null) {
+            accessors.getter = property
+        }
+    }
+
+    /** @return The setter of [property] if it is a getter, or its getter if it is a setter. */
+    fun partnerOf(property: Property): Property? {
+        val accessors = byName[property.name] ?: return null
+        return if (property.isSetter) accessors.getter else accessors.setter
+    }
+
+    /** @return `true` if there is a simple property named [name]. */
+    operator fun contains(name: String) = name in byName
+}
@@ -0,0 +1,71 @@
+package io.shreyash.rush.processor.cache
+
+import com.google.appinventor.components.annotations.ExtensionComponent
+import io.shreyash.rush.processor.model.Extension
+import shaded.org.json.JSONArray
+import shaded.org.json.JSONException
+import shaded.org.json.JSONObject
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import kotlin.io.path.exists
+import kotlin.io.path.readText
+import kotlin.io.path.writeText
+
+/**
+ * A persistent cache of block descriptors, one file per extension class, keyed by the fingerprint
+ * of the class (see [Fingerprinter]).
+ */
+class DescriptorCache(private val cacheDir: Path) {
+
+    /**
+     * @return The extension [fqcn] as it was cached, or `null` if it isn't cached or if the cached
+     * descriptors were created from a different version of the class.
+     */
+    fun get(fqcn: String, fingerprint: String, extensionComponent: ExtensionComponent): Extension? {
+        val file = cacheFileOf(fqcn)
+        if (!file.exists()) return null
+
+        return try {
+            val json = JSONObject(file.readText())
+            if (json.optString("fingerprint") != fingerprint) {
+                return null
+            }
+
+            Extension(
+                extensionComponent,
+                fqcn,
+                json.getJSONArray("events").asObjectList(),
+                json.getJSONArray("methods").asObjectList(),
+                json.getJSONArray("blockProperties").asObjectList(),
+                json.getJSONArray("properties").asObjectList(),
+            )
+        } catch (e: JSONException) {
+            // A corrupt cache file is as good as a missing one.
+            null
+        } catch (e: IOException) {
+            null
+        }
+    }
+
+    /** Stores the block descriptors of [extension] against [fingerprint]. */
+    fun put(extension: Extension, fingerprint: String) {
+        val json = JSONObject()
+            .put("fingerprint", fingerprint)
+            .put("events", extension.events)
+            .put("methods", extension.functions)
+            .put("blockProperties", extension.properties)
+            .put("properties", extension.designerProperties)
+
+        // Write to a temp file first so that an interrupted build never leaves a half written file.
+        Files.createDirectories(cacheDir)
+        val tmp = Files.createTempFile(cacheDir, extension.fqcn, ".tmp")
+        tmp.writeText(json.toString())
+        Files.move(tmp, cacheFileOf(extension.fqcn), StandardCopyOption.REPLACE_EXISTING)
+    }
+
+    private fun cacheFileOf(fqcn: String) = cacheDir.resolve("$fqcn.json")
+
+    private fun JSONArray.asObjectList() = (0 until this.length()).map { this.getJSONObject(it) }
+}
@@ -0,0 +1,87 @@
+package io.shreyash.rush.processor.cache
+
+import io.shreyash.rush.processor.block.OptionListExtractor
+import java.security.MessageDigest
+import javax.lang.model.element.Element
+import javax.lang.model.element.ElementKind
+import javax.lang.model.element.ExecutableElement
+import javax.lang.model.element.TypeElement
+import javax.lang.model.type.DeclaredType
+import javax.lang.model.type.TypeMirror
+import javax.lang.model.util.Elements
+
+/**
+ * Computes fingerprints of extension classes. A fingerprint covers everything that ends up in the
+ * block descriptors of a class: the signatures, modifiers, annotations and doc comments of the
+ * class and its members, and the sources of the enums they use as option list helpers. Method
+ * bodies are deliberately left out, so editing them doesn't invalidate the cache.
+ */
+class Fingerprinter(
+    private val elementUtils: Elements,
+    private val optionLists: OptionListExtractor,
+) {
+
+    /** @return Hex encoded SHA-256 fingerprint of [element]. */
+    fun fingerprintOf(element: TypeElement): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        fun update(value: Any?) {
+            digest.update(value.toString().toByteArray())
+            digest.update(0)
+        }
+
+        update(CACHE_VERSION)
+        update(element.qualifiedName)
+        updateWithElement(element, ::update)
+
+        val visitedEnums = mutableSetOf<String>()
+        for (member in element.enclosedElements) {
+            update(member.kind)
+            update(member)
+            updateWithElement(member, ::update)
+
+            if (member is ExecutableElement) {
+                update(member.returnType)
+                updateWithEnum(member.returnType, visitedEnums, ::update)
+                member.parameters.forEach {
+                    update(it.simpleName)
+                    update(it.asType())
+                    updateWithElement(it, ::update)
+                    updateWithEnum(it.asType(), visitedEnums, ::update)
+                    updateWithOptionsEnum(it, visitedEnums, ::update)
+                }
+            }
+            updateWithOptionsEnum(member, visitedEnums, ::update)
+        }
+
+        return digest.digest().joinToString("") { "%02x".format(it) }
+    }
+
+    private fun updateWithElement(element: Element, update: (Any?) -> Unit) {
+        update(element.modifiers.sorted())
+        update(element.annotationMirrors)
+        update(elementUtils.getDocComment(element))
+    }
+
+    /** Folds the source of [type] into the fingerprint if it is an enum. */
+    private fun updateWithEnum(type: TypeMirror, visited: MutableSet<String>, update: (Any?) -> Unit) {
+        if (type !is DeclaredType) return
+        val el = type.asElement() as? TypeElement ?: return
+        if (el.kind != ElementKind.ENUM || !visited.add(el.qualifiedName.toString())) return
+
+        update(el.qualifiedName)
+        update(optionLists.sourceFingerprintOf(el))
+    }
+
+    /** Folds the enums referenced through class literals in the annotations of [element], like `@Options`. */
+    private fun updateWithOptionsEnum(element: Element, visited: MutableSet<String>, update: (Any?) -> Unit) {
+        element.annotationMirrors
+            .flatMap { it.elementValues.values }
+            .mapNotNull { it.value as? TypeMirror }
+            .forEach { updateWithEnum(it, visited, update) }
+    }
+
+    companion object {
+        /** Bump this whenever the format of the cached descriptors changes. */
+        private const val CACHE_VERSION = 5
+    }
+}
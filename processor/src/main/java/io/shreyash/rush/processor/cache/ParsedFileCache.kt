@@ -0,0 +1,38 @@
+package io.shreyash.rush.processor.cache
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * An in-memory cache of parsed files that outlives a single processing run, so that a JVM that
+ * hosts several builds (see [io.shreyash.rush.processor.daemon.ProcessorDaemon]) parses a file
+ * again only when its contents change. Entries are keyed by the path of the file and are only used
+ * while the SHA-256 of its contents stays the same.
+ */
+class ParsedFileCache<T>(private val parse: (ByteArray) -> T) {
+    private class Entry<T>(val fingerprint: String, val value: T)
+
+    private val entries = ConcurrentHashMap<Path, Entry<T>>()
+
+    /** The parsed contents of a file, and whether they came from the cache. */
+    class Lookup<T>(val value: T, val cached: Boolean)
+
+    /**
+     * @return The parsed contents of [file], from the cache if the file hasn't changed since it was
+     * last parsed, and whether they did come from the cache.
+     * @throws java.io.IOException If the file can't be read.
+     */
+    fun lookUp(file: Path): Lookup<T> {
+        val bytes = Files.readAllBytes(file)
+        val fingerprint = MessageDigest.getInstance("SHA-256").digest(bytes)
+            .joinToString("") { "%02x".format(it) }
+        val key = file.toAbsolutePath().normalize()
+
+        entries[key]?.takeIf { it.fingerprint == fingerprint }?.let {
+            return Lookup(it.value, cached = true)
+        }
+        return Lookup(parse(bytes).also { entries[key] = Entry(fingerprint, it) }, cached = false)
+    }
+}
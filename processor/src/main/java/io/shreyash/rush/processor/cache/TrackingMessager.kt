@@ -0,0 +1,48 @@
+package io.shreyash.rush.processor.cache
+
+import javax.annotation.processing.Messager
+import javax.lang.model.element.AnnotationMirror
+import javax.lang.model.element.AnnotationValue
+import javax.lang.model.element.Element
+import javax.tools.Diagnostic
+
+/**
+ * A [Messager] that keeps count of the errors printed through it. This is used to make sure that
+ * the descriptors of classes that failed the checks never end up in the cache.
+ */
+class TrackingMessager(private val delegate: Messager) : Messager {
+    @Volatile
+    var errorCount = 0
+        private set
+
+    override fun printMessage(kind: Diagnostic.Kind, msg: CharSequence) {
+        track(kind)
+        delegate.printMessage(kind, msg)
+    }
+
+    override fun printMessage(kind: Diagnostic.Kind, msg: CharSequence, e: Element?) {
+        track(kind)
+        delegate.printMessage(kind, msg, e)
+    }
+
+    override fun printMessage(kind: Diagnostic.Kind, msg: CharSequence, e: Element?, a: AnnotationMirror?) {
+        track(kind)
+        delegate.printMessage(kind, msg, e, a)
+    }
+
+    override fun printMessage(
+        kind: Diagnostic.Kind,
+        msg: CharSequence,
+        e: Element?,
+        a: AnnotationMirror?,
+        v: AnnotationValue?
+    ) {
+        track(kind)
+        delegate.printMessage(kind, msg, e, a, v)
+    }
+
+    @Synchronized
+    private fun track(kind: Diagnostic.Kind) {
+        if (kind == Diagnostic.Kind.ERROR) errorCount++
+    }
+}
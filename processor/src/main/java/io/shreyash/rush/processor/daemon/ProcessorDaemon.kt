@@ -0,0 +1,117 @@
+package io.shreyash.rush.processor.daemon
+
+import io.shreyash.rush.processor.ExtensionProcessor
+import shaded.org.json.JSONArray
+import shaded.org.json.JSONException
+import shaded.org.json.JSONObject
+import java.io.BufferedReader
+import java.io.FileDescriptor
+import java.io.FileOutputStream
+import java.io.PrintStream
+import java.io.StringWriter
+import javax.tools.JavaCompiler
+import javax.tools.ToolProvider
+import kotlin.system.exitProcess
+
+/**
+ * A long-lived host for the annotation processor, which the Rush CLI can reuse across builds.
+ *
+ * Every build runs javac in this JVM with a new [ExtensionProcessor], so the processor's classes,
+ * the Markdown renderer (and its bounded memo of rendered descriptions) and the caches of parsed
+ * project files stay warm in between. The caches are invalidated by the fingerprints of the files
+ * they were built from. OptionList data is extracted afresh by every build, see
+ * [io.shreyash.rush.processor.block.OptionListExtractor].
+ *
+ * The protocol is line based: every request is a JSON object on a line of its own on stdin, and
+ * every response is a JSON object on a line of its own on stdout.
+ *
+ * - `{"type": "compile", "options": ["-d", "..."], "sources": ["..."]}` compiles the given sources.
+ *   The options are javac's, minus the processor path. The processor's own options (see
+ *   [io.shreyash.rush.processor.ProcessorOptions]) must be passed as `-A` options, as the
+ *   environment of the daemon is shared by all the builds. The response is
+ *   `{"success": true, "output": "...", "millis": 1234}`, where output holds javac's diagnostics.
+ * - `{"type": "shutdown"}` stops the daemon.
+ *
+ * Failed requests are answered with `{"success": false, "output": "<the error>"}`.
+ */
+object ProcessorDaemon {
+    @JvmStatic
+    fun main(args: Array<String>) {
+        val compiler = ToolProvider.getSystemJavaCompiler()
+        if (compiler == null) {
+            System.err.println("No Java compiler found. The processor daemon must be run on a JDK.")
+            exitProcess(1)
+        }
+
+        // Stdout is reserved for the responses. Anything else that gets printed goes to stderr.
+        val responses = PrintStream(FileOutputStream(FileDescriptor.out), true, "UTF-8")
+        System.setOut(System.err)
+
+        serve(compiler, System.`in`.bufferedReader(Charsets.UTF_8), responses)
+    }
+
+    /**
+     * Answers the [requests], one per line, until a shutdown request or the end of the input.
+     */
+    fun serve(compiler: JavaCompiler, requests: BufferedReader, responses: PrintStream) {
+        while (true) {
+            val line = requests.readLine() ?: break
+            if (line.isBlank()) continue
+
+            val request = try {
+                JSONObject(line)
+            } catch (e: JSONException) {
+                respond(responses, failure("Malformed request: ${e.message}"))
+                continue
+            }
+
+            when (request.optString("type")) {
+                "compile" -> respond(responses, compile(compiler, request))
+                "shutdown" -> break
+                else -> respond(responses, failure("Unknown request type: ${request.optString("type")}"))
+            }
+        }
+    }
+
+    private fun compile(compiler: JavaCompiler, request: JSONObject): JSONObject {
+        val output = StringWriter()
+        val start = System.nanoTime()
+
+        return try {
+            val options = request.getJSONArray("options").asStringList()
+            val sources = request.getJSONArray("sources").asStringList()
+
+            // A new file manager for every build, so that changes to the classpath are picked up.
+            val success = compiler.getStandardFileManager(null, null, Charsets.UTF_8).use { fileManager ->
+                val task = compiler.getTask(
+                    output,
+                    fileManager,
+                    null,
+                    options,
+                    null,
+                    fileManager.getJavaFileObjectsFromStrings(sources)
+                )
+                task.setProcessors(listOf(ExtensionProcessor()))
+                task.call()
+            }
+
+            JSONObject()
+                .put("success", success)
+                .put("output", output.toString())
+                .put("millis", (System.nanoTime() - start) / 1_000_000)
+        } catch (e: Throwable) {
+            failure(output.toString() + e.stackTraceToString())
+        }
+    }
+
+    private fun failure(message: String): JSONObject = JSONObject()
+        .put("success", false)
+        .put("output", message)
+
+    private fun respond(responses: PrintStream, response: JSONObject) {
+        // JSONObject escapes line terminators, so a response always takes up a single line.
+        responses.println(response.toString())
+    }
+
+    private fun JSONArray.asStringList() = (0 until length()).map { getString(it) }
+}
@@ -1,16 +1,17 @@
 package io.shreyash.rush.processor.model
 
 import com.google.appinventor.components.annotations.ExtensionComponent
-import io.shreyash.rush.processor.block.DesignerProperty
-import io.shreyash.rush.processor.block.Event
-import io.shreyash.rush.processor.block.Function
-import io.shreyash.rush.processor.block.Property
+import shaded.org.json.JSONObject
 
+/**
+ * An extension and the JSON descriptors of all its blocks. The descriptors are either freshly
+ * created from the block models or read from the descriptor cache.
+ */
 data class Extension(
     val extensionComponent: ExtensionComponent,
     val fqcn: String,
-    val events: List<Event>,
-    val functions: List<Function>,
-    val properties: List<Property>,
-    val designerProperties: List<DesignerProperty>,
+    val events: List<JSONObject>,
+    val functions: List<JSONObject>,
+    val properties: List<JSONObject>,
+    val designerProperties: List<JSONObject>,
 )
@@ -0,0 +1,31 @@
+package io.shreyash.rush.processor.model
+
+import com.google.appinventor.components.annotations.ExtensionComponent
+import io.shreyash.rush.processor.block.DesignerProperty
+import io.shreyash.rush.processor.block.Event
+import io.shreyash.rush.processor.block.Function
+import io.shreyash.rush.processor.block.Property
+
+/**
+ * The block models of an extension class. Everything these need from the element tree is resolved
+ * while they are created (on the processor thread), so [toExtension] is free of any javac calls and
+ * can safely run on a worker thread.
+ */
+data class ExtensionModel(
+    val extensionComponent: ExtensionComponent,
+    val fqcn: String,
+    val events: List<Event>,
+    val functions: List<Function>,
+    val properties: List<Property>,
+    val designerProperties: List<DesignerProperty>,
+) {
+    /** Builds the JSON descriptors of all the blocks of this extension. */
+    fun toExtension() = Extension(
+        extensionComponent,
+        fqcn,
+        events.map { it.asJsonObject() },
+        functions.map { it.asJsonObject() },
+        properties.map { it.asJsonObject() },
+        designerProperties.map { it.asJsonObject() },
+    )
+}
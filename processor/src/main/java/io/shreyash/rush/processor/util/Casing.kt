@@ -1,23 +1,53 @@
 package io.shreyash.rush.processor.util
 
-import java.util.regex.Pattern
+/*
+ * These checks used to be the following regexes, compiled on every call:
+ *
+ *   camelCase:  ^[a-z]([A-Z0-9]*[a-z][a-z0-9]*[A-Z]|[a-z0-9]*[A-Z][A-Z0-9]*[a-z])?[A-Za-z0-9]*$
+ *   PascalCase: ^[A-Z]([A-Z0-9]*[a-z][a-z0-9]*[A-Z]|[a-z0-9]*[A-Z][A-Z0-9]*[a-z])?[A-Za-z0-9]*$
+ *
+ * The optional group only ever matches alphanumerics, which the trailing [A-Za-z0-9]* accepts
+ * anyway, so both reduce to "a lower (or upper) case letter followed by alphanumerics". The
+ * scanners below accept exactly the same strings, including the one trailing line terminator `$`
+ * lets through, without compiling a pattern or allocating anything.
+ */
 
 /**
  * Returns true if the [text] follows camel case naming convention. For e.g., fooBar.
  */
 fun isCamelCase(text: String): Boolean {
-    val pattern = Pattern.compile(
-        """^[a-z]([A-Z0-9]*[a-z][a-z0-9]*[A-Z]|[a-z0-9]*[A-Z][A-Z0-9]*[a-z])?[A-Za-z0-9]*$"""
-    )
-    return pattern.matcher(text).find()
+    return text.isNotEmpty() && text[0] in 'a'..'z' && isAlphanumericTail(text)
 }
 
 /**
  * Returns true if the [text] follows pascal case naming convention. For e.g., FooBar.
  */
 fun isPascalCase(text: String): Boolean {
-    val pattern = Pattern.compile(
-        """^[A-Z]([A-Z0-9]*[a-z][a-z0-9]*[A-Z]|[a-z0-9]*[A-Z][A-Z0-9]*[a-z])?[A-Za-z0-9]*$"""
-    )
-    return pattern.matcher(text).find()
+    return text.isNotEmpty() && text[0] in 'A'..'Z' && isAlphanumericTail(text)
+}
+
+/** @return `true` if all but the first character of [text] are ASCII letters or digits. */
+private fun isAlphanumericTail(text: String): Boolean {
+    val end = endIgnoringLineTerminator(text)
+    for (i in 1 until end) {
+        val c = text[i]
+        if (c !in 'a'..'z' && c !in 'A'..'Z' && c !in '0'..'9') {
+            return false
+        }
+    }
+    return true
+}
+
+/** @return The length of [text] without its final line terminator, if it has one. */
+private fun endIgnoringLineTerminator(text: String): Int {
+    val n = text.length
+    if (n >= 3 && text[n - 2] == '\r' && text[n - 1] == '\n') {
+        return n - 2
+    }
+    if (n >= 2) {
+        when (text[n - 1]) {
+            '\n', '\r', '\u0085', '\u2028', '\u2029' -> return n - 1
+        }
+    }
+    return n
 }
@@ -0,0 +1,60 @@
+package io.shreyash.rush.processor.util
+
+import org.commonmark.ext.autolink.AutolinkExtension
+import org.commonmark.ext.task.list.items.TaskListItemsExtension
+import org.commonmark.parser.Parser
+import org.commonmark.renderer.html.HtmlRenderer
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Renders markdown descriptions as HTML. The CommonMark parser and renderer are built only once
+ * and, being immutable, are shared between threads. Recently rendered descriptions are memoized, so
+ * repeated descriptions (common with getter/setter pairs) are rendered only once. The memo is
+ * bounded, as this object lives as long as the JVM does, for eg., in the processor daemon.
+ */
+object Markdown {
+    private val extensionList = listOf(
+        // Adds ability to convert URLs to clickable links
+        AutolinkExtension.create(),
+        // Adds ability to create task lists.
+        TaskListItemsExtension.create()
+    )
+
+    private val parser = Parser.Builder().extensions(extensionList).build()
+
+    private val renderer = HtmlRenderer.builder()
+        .extensions(extensionList)
+        .softbreak("<br>")
+        .build()
+
+    private const val CACHE_SIZE = 4096
+
+    /** Rendered descriptions, least recently used first. Access is synchronized on the map itself. */
+    private val cache = object : LinkedHashMap<String, String>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, String>) = size > CACHE_SIZE
+    }
+
+    private val renderNanos = AtomicLong()
+
+    /** Total time spent actually rendering markdown (not counting cache hits), in nanoseconds. */
+    val totalRenderNanos: Long
+        get() = renderNanos.get()
+
+    /** Parses [markdown] and returns it as HTML. */
+    fun render(markdown: String): String {
+        if (markdown.isBlank()) return ""
+        synchronized(cache) { cache[markdown] }?.let { return it }
+
+        // Rendered outside the lock, so that other threads aren't held up. At worst, a description
+        // that is rendered by two threads at once is rendered twice.
+        val start = System.nanoTime()
+        val html = renderer.render(parser.parse(markdown))
+        renderNanos.addAndGet(System.nanoTime() - start)
+
+        synchronized(cache) { cache[markdown] = html }
+        return html
+    }
+
+    /** Drops all the memoized descriptions. */
+    fun clearCache() = synchronized(cache) { cache.clear() }
+}
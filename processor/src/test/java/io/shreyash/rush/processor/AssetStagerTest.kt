@@ -0,0 +1,60 @@
+package io.shreyash.rush.processor
+
+import io.shreyash.rush.processor.testing.CorpusGenerator
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.io.path.readText
+import kotlin.io.path.writeText
+
+class AssetStagerTest {
+    private val root: Path = Files.createTempDirectory("rush-asset-stager")
+    private val buildDir: Path = root.resolve("build")
+    private val source: Path = root.resolve("icon.png").also { it.writeText("icon") }
+    private val dest: Path = buildDir.resolve("raw").resolve("aiwebres").resolve("icon.png")
+
+    @After
+    fun cleanUp() = CorpusGenerator.delete(root)
+
+    @Test
+    fun copiesByDefault() {
+        assertTrue(AssetStager(buildDir, link = false).stage(source, dest))
+        assertFalse(Files.isSameFile(source, dest))
+
+        // Writing to the staged asset must not touch the project's asset.
+        dest.writeText("optimized")
+        assertEquals("icon", source.readText())
+    }
+
+    @Test
+    fun skipsUpToDateFiles() {
+        AssetStager(buildDir, link = false).apply {
+            stage(source, dest)
+            save()
+        }
+        assertFalse(AssetStager(buildDir, link = false).stage(source, dest))
+
+        source.writeText("new icon")
+        assertTrue(AssetStager(buildDir, link = false).stage(source, dest))
+        assertEquals("new icon", dest.readText())
+    }
+
+    @Test
+    fun linksWhenAskedTo() {
+        AssetStager(buildDir, link = true).apply {
+            stage(source, dest)
+            save()
+        }
+        assumeTrue("The filesystem doesn't support hardlinks", Files.isSameFile(source, dest))
+
+        // A later build without linking replaces the link with a copy.
+        assertTrue(AssetStager(buildDir, link = false).stage(source, dest))
+        assertFalse(Files.isSameFile(source, dest))
+        assertEquals("icon", dest.readText())
+    }
+}
@@ -0,0 +1,91 @@
+package io.shreyash.rush.processor
+
+import io.shreyash.rush.descriptor.BinaryDescriptor
+import io.shreyash.rush.descriptor.BinaryDescriptor.Section
+import io.shreyash.rush.processor.block.PropertyAccessType
+import io.shreyash.rush.processor.testing.CorpusGenerator
+import io.shreyash.rush.processor.testing.CorpusSpec
+import io.shreyash.rush.processor.testing.ProcessorHarness
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import shaded.org.json.JSONArray
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.io.path.readText
+
+/** Reads the `components.bin` the processor writes back, and compares it with `components.json`. */
+class BinaryDescriptorTest {
+    private val root: Path = Files.createTempDirectory("rush-binary-descriptor")
+
+    @After
+    fun cleanUp() = CorpusGenerator.delete(root)
+
+    @Test
+    fun accessTypesMatchTheProcessors() {
+        assertEquals(
+            listOf(
+                null,
+                PropertyAccessType.READ,
+                PropertyAccessType.WRITE,
+                PropertyAccessType.READ_WRITE,
+                PropertyAccessType.INVISIBLE,
+            ),
+            BinaryDescriptor.ACCESS_TYPES
+        )
+    }
+
+    @Test
+    fun matchesComponentsJson() {
+        val corpus = CorpusGenerator.generate(CorpusSpec(extensions = 4, blocksPerExtension = 40, seed = 5), root)
+        val result = ProcessorHarness.run(corpus)
+        assertTrue(result.diagnostics, result.success)
+
+        val json = JSONArray(result.rawDir.resolve("components.json").readText())
+        val binary = BinaryDescriptor.open(result.rawDir.resolve("components.bin"))
+        assertEquals(json.length(), binary.componentCount)
+
+        for (i in 0 until json.length()) {
+            val expected = json.getJSONObject(i)
+            val component = binary.component(i)
+            assertEquals(expected.getString("name"), component.name)
+            assertEquals(expected.getString("type"), component.type)
+            assertEquals(component.name, binary.componentOfType(component.type)?.name)
+
+            checkSection(expected.getJSONArray("events"), component, Section.EVENTS, null)
+            checkSection(expected.getJSONArray("methods"), component, Section.METHODS, "returnType")
+            checkSection(expected.getJSONArray("blockProperties"), component, Section.BLOCK_PROPERTIES, "type")
+            checkSection(expected.getJSONArray("properties"), component, Section.PROPERTIES, "editorType")
+            assertNull(component.block(Section.METHODS, "NoSuchBlock"))
+        }
+        assertNull(binary.componentOfType("com.example.NoSuchExtension"))
+    }
+
+    private fun checkSection(
+        expected: JSONArray,
+        component: BinaryDescriptor.Component,
+        section: Section,
+        typeKey: String?,
+    ) {
+        val blocks = (0 until expected.length()).map { expected.getJSONObject(it) }.sortedBy { it.getString("name") }
+        val actual = component.blocks(section)
+        assertEquals(blocks.size, component.blockCount(section))
+        assertEquals(blocks.map { it.getString("name") }, actual.map { it.name })
+
+        blocks.zip(actual).forEach { (json, block) ->
+            assertEquals(typeKey?.let { json.optString(it, null) }, block.type)
+            assertEquals(json.optString("deprecated") == "true", block.isDeprecated)
+            assertEquals(json.optString("rw", null), block.accessType)
+
+            val params = json.optJSONArray("params") ?: JSONArray()
+            assertEquals(
+                (0 until params.length()).map { params.getJSONObject(it).let { p -> p.getString("name") to p.getString("type") } },
+                block.params.map { it.name to it.type }
+            )
+            assertNotNull(component.block(section, json.getString("name")))
+        }
+    }
+}
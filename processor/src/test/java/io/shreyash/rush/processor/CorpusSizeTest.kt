@@ -0,0 +1,79 @@
+package io.shreyash.rush.processor
+
+import io.shreyash.rush.processor.testing.CorpusGenerator
+import io.shreyash.rush.processor.testing.CorpusSpec
+import io.shreyash.rush.processor.testing.ProcessorHarness
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import shaded.org.json.JSONArray
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.io.path.readText
+
+/**
+ * Runs the processor over corpora of 1, 10 and 100 extension classes (up to thousands of blocks
+ * and a large manifest) and checks that every class and block makes it into `components.json`.
+ * The throughput and heap usage at these sizes are tracked by the JMH benchmarks instead.
+ */
+class CorpusSizeTest {
+    private val roots = mutableListOf<Path>()
+
+    @After
+    fun cleanUp() = roots.forEach { CorpusGenerator.delete(it) }
+
+    @Test
+    fun oneClass() = check(CorpusSpec(extensions = 1, blocksPerExtension = 500))
+
+    @Test
+    fun tenClasses() = check(CorpusSpec(extensions = 10, blocksPerExtension = 100, permissions = 50, appElements = 20))
+
+    @Test
+    fun hundredClasses() = check(
+        CorpusSpec(extensions = 100, blocksPerExtension = 50, optionLists = 10, permissions = 200, appElements = 100)
+    )
+
+    @Test
+    fun parallelMatchesSequential() {
+        val spec = CorpusSpec(extensions = 20, blocksPerExtension = 20, seed = 3)
+        val sequential = process(spec, "${ProcessorOptions.PARALLEL}=false")
+        val parallel = process(spec, "${ProcessorOptions.PARALLEL}=true")
+        assertEquals(sequential.resolve("components.json").readText(), parallel.resolve("components.json").readText())
+    }
+
+    private fun check(spec: CorpusSpec) {
+        val root = Files.createTempDirectory("rush-corpus").also { roots.add(it) }
+        val corpus = CorpusGenerator.generate(spec, root)
+        val result = ProcessorHarness.run(corpus)
+        assertTrue(result.diagnostics, result.success)
+
+        val components = JSONArray(result.rawDir.resolve("components.json").readText())
+        assertEquals(spec.extensions, components.length())
+
+        var blocks = 0
+        for (i in 0 until components.length()) {
+            val component = components.getJSONObject(i)
+            blocks += component.getJSONArray("events").length() +
+                    component.getJSONArray("methods").length() +
+                    component.getJSONArray("blockProperties").length() +
+                    component.getJSONArray("properties").length()
+        }
+        assertEquals(corpus.blockCount, blocks)
+
+        val buildInfos = JSONArray(result.rawDir.resolve("files").resolve("component_build_infos.json").readText())
+        val permissions = buildInfos.getJSONObject(0).getJSONArray("permissions")
+        assertEquals(spec.permissions, permissions.length())
+    }
+
+    private fun process(spec: CorpusSpec, vararg options: String): Path {
+        val root = Files.createTempDirectory("rush-corpus").also { roots.add(it) }
+        val result = ProcessorHarness.run(
+            CorpusGenerator.generate(spec, root),
+            "${ProcessorOptions.REPRODUCIBLE}=true",
+            *options
+        )
+        assertTrue(result.diagnostics, result.success)
+        return result.rawDir
+    }
+}
@@ -0,0 +1,183 @@
+package io.shreyash.rush.processor
+
+import io.shreyash.rush.processor.testing.CorpusGenerator
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertThrows
+import org.junit.Test
+import shaded.org.json.JSONArray
+import shaded.org.json.JSONObject
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.io.path.listDirectoryEntries
+import kotlin.io.path.readText
+import kotlin.io.path.writeText
+import kotlin.random.Random
+
+class DescriptorWriterTest {
+    private val dir: Path = Files.createTempDirectory("rush-descriptor-writer")
+    private val file: Path = dir.resolve("components.json")
+
+    @After
+    fun cleanUp() = CorpusGenerator.delete(dir)
+
+    @Test
+    fun failureKeepsThePreviousFile() {
+        file.writeText(PREVIOUS)
+
+        assertThrows(IOException::class.java) {
+            DescriptorWriter(file).use { writer ->
+                writer.beginArray()
+                writer.writeObject(listOf("name" to "Half"))
+                throw IOException("Disk full")
+            }
+        }
+
+        assertEquals(PREVIOUS, file.readText())
+        assertEquals(listOf(file), dir.listDirectoryEntries())
+    }
+
+    @Test
+    fun failureWithoutPreviousFileWritesNothing() {
+        assertThrows(IllegalStateException::class.java) {
+            DescriptorWriter(file).use { writer ->
+                writer.beginArray()
+                throw IllegalStateException()
+            }
+        }
+
+        assertEquals(emptyList<Path>(), dir.listDirectoryEntries())
+    }
+
+    @Test
+    fun completedDocumentReplacesThePreviousFile() {
+        file.writeText(PREVIOUS)
+
+        DescriptorWriter(file).use { writer ->
+            writer.beginArray()
+            writer.writeObject(listOf("name" to "New"))
+            writer.endArray()
+        }
+
+        assertEquals("[{\"name\":\"New\"}]", file.readText())
+        assertEquals(listOf(file), dir.listDirectoryEntries())
+    }
+
+    @Test
+    fun unchangedDocumentKeepsTheModificationTime() {
+        file.writeText(PREVIOUS)
+        val modified = Files.getLastModifiedTime(file)
+        Thread.sleep(10)
+
+        DescriptorWriter(file).use { writer ->
+            writer.beginArray()
+            writer.writeObject(listOf("name" to "Old"))
+            writer.endArray()
+        }
+
+        assertEquals(PREVIOUS, file.readText())
+        assertEquals(modified, Files.getLastModifiedTime(file))
+    }
+
+    @Test
+    fun matchesJsonArrayForExtensions() {
+        val param = { name: String, type: String -> JSONObject().put("name", name).put("type", type) }
+        val options = JSONArray()
+            .put(JSONObject().put("name", "North").put("value", "N").put("deprecated", false))
+            .put(JSONObject().put("name", "South").put("value", JSONObject.NULL).put("deprecated", true))
+        val function = JSONObject()
+            .put("name", "Pick")
+            .put("description", "<p>Picks a <code>direction</code>.</p>\n")
+            .put("deprecated", "false")
+            .put("params", listOf(param("direction", "text"), param("times", "number")))
+            .put("returnType", "com.example.DirectionEnum")
+            .put("helper", JSONObject().put("type", "OPTION_LIST").put("data", JSONObject().put("options", options)))
+        val event = JSONObject()
+            .put("name", "Moved")
+            .put("description", "Fired when \"it\" moves </script> \u2028")
+            .put("deprecated", "true")
+            .put("params", emptyList<JSONObject>())
+            .put("helper", null as Any?)
+
+        checkMatches(
+            listOf(
+                extension("Compass", homepage = "https://example.com", events = listOf(event), methods = listOf(function)),
+                extension("Empty", homepage = null, events = emptyList(), methods = emptyList()),
+            )
+        )
+    }
+
+    @Test
+    fun matchesJsonArrayForRandomFields() {
+        val random = Random(42)
+        repeat(200) {
+            val objects = (0 until random.nextInt(4)).map {
+                // Few distinct keys, so that keys are often put several times or put to null.
+                (0 until random.nextInt(30)).map { "key${random.nextInt(20)}" to randomValue(random, depth = 0) }
+            }
+            checkMatches(objects)
+        }
+    }
+
+    private fun extension(
+        name: String,
+        homepage: String?,
+        events: List<JSONObject>,
+        methods: List<JSONObject>,
+    ): List<Pair<String, Any?>> = listOf(
+        "external" to "true",
+        "categoryString" to "EXTENSION",
+        "name" to name,
+        "type" to "com.example.$name",
+        "helpUrl" to homepage,
+        "androidMinSdk" to 7,
+        "dateBuilt" to "2022-01-01",
+        "events" to events,
+        "methods" to methods,
+        "blockProperties" to emptyList<JSONObject>(),
+        "properties" to listOf(JSONObject().put("name", "Enabled").put("defaultValue", "True")),
+    )
+
+    private fun randomValue(random: Random, depth: Int): Any? = when (random.nextInt(if (depth < 3) 9 else 6)) {
+        0 -> null
+        1 -> random.nextInt()
+        2 -> random.nextLong()
+        3 -> random.nextDouble() * 1e6
+        4 -> random.nextBoolean()
+        5 -> randomString(random)
+        6 -> (0 until random.nextInt(4)).map { randomValue(random, depth + 1) }
+        7 -> JSONArray((0 until random.nextInt(4)).map { randomValue(random, depth + 1) })
+        else -> JSONObject().apply {
+            repeat(random.nextInt(4)) { put(randomString(random), randomValue(random, depth + 1)) }
+        }
+    }
+
+    private fun randomString(random: Random): String {
+        val chars = "aZ0 \"\\/<>\n\t\u0000\u001f\u2028é😀"
+        return (0 until random.nextInt(8)).map { chars[random.nextInt(chars.length)] }.joinToString("")
+    }
+
+    /** Writes [objects] with a [DescriptorWriter] and compares the file with `JSONArray.toString()`. */
+    private fun checkMatches(objects: List<List<Pair<String, Any?>>>) {
+        val expected = JSONArray()
+        for (fields in objects) {
+            val obj = JSONObject()
+            for ((key, value) in fields) obj.put(key, value)
+            expected.put(obj)
+        }
+
+        DescriptorWriter(file).use { writer ->
+            writer.beginArray()
+            objects.forEach { writer.writeObject(it) }
+            writer.endArray()
+        }
+
+        assertArrayEquals(expected.toString().toByteArray(Charsets.UTF_8), Files.readAllBytes(file))
+    }
+
+    private companion object {
+        const val PREVIOUS = "[{\"name\":\"Old\"}]"
+    }
+}
@@ -0,0 +1,57 @@
+package io.shreyash.rush.processor
+
+import io.shreyash.rush.processor.testing.CorpusGenerator
+import io.shreyash.rush.processor.testing.CorpusSpec
+import io.shreyash.rush.processor.testing.ProcessorHarness
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.net.URLClassLoader
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Compiles generated corpora for real with [ProcessorOptions.dispatch] on, so that the generated
+ * `$$Dispatch` classes are compiled too, and calls blocks through them.
+ */
+class DispatchGeneratorTest {
+    private val root: Path = Files.createTempDirectory("rush-dispatch")
+    private val classesDir: Path = Files.createTempDirectory("rush-dispatch-classes")
+
+    @After
+    fun cleanUp() {
+        CorpusGenerator.delete(root)
+        CorpusGenerator.delete(classesDir)
+    }
+
+    @Test
+    fun generatedClassesCompileAndDispatch() {
+        // Every extension has helper functions with @Options and @Asset (type-use annotated)
+        // parameters, and properties of every kind.
+        val spec = CorpusSpec(extensions = 3, blocksPerExtension = 30, seed = 16)
+        val corpus = CorpusGenerator.generate(spec, root)
+        val result = ProcessorHarness.run(corpus, "${ProcessorOptions.DISPATCH}=true", classesDir = classesDir)
+        assertTrue(result.diagnostics, result.success)
+
+        URLClassLoader(arrayOf(classesDir.toUri().toURL()), javaClass.classLoader).use { loader ->
+            val extensionClass = loader.loadClass("com.example.corpus0.Extension0")
+            val dispatch = loader.loadClass("com.example.corpus0.Extension0\$\$Dispatch")
+            val extension = extensionClass.getConstructor().newInstance()
+
+            val callFunction = dispatch.getMethod(
+                "callFunction", extensionClass, String::class.java, Array<Any>::class.java
+            )
+            assertNull(callFunction.invoke(null, extension, "Pick3", arrayOf<Any>("value0", "icon.png")))
+
+            val getProperty = dispatch.getMethod("getProperty", extensionClass, String::class.java)
+            val setProperty = dispatch.getMethod("setProperty", extensionClass, String::class.java, Any::class.java)
+            val value = getProperty.invoke(null, extension, "Value4")
+            setProperty.invoke(null, extension, "Value4", value)
+
+            val error = runCatching { callFunction.invoke(null, extension, "NoSuchFunction", arrayOf<Any>()) }
+            assertEquals(IllegalArgumentException::class.java, error.exceptionOrNull()?.cause?.javaClass)
+        }
+    }
+}
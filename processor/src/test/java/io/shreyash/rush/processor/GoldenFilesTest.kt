@@ -0,0 +1,78 @@
+package io.shreyash.rush.processor
+
+import io.shreyash.rush.processor.testing.CorpusGenerator
+import io.shreyash.rush.processor.testing.CorpusSpec
+import io.shreyash.rush.processor.testing.ProcessorHarness
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import kotlin.io.path.createDirectories
+import kotlin.io.path.readText
+import kotlin.io.path.writeText
+
+/**
+ * Compares the info files the processor emits for generated corpora with the golden files in
+ * `src/test/resources/golden/<corpus>`. The build date is the only field masked out.
+ *
+ * After an intended change to the output, run the tests with `-PupdateGoldens` to rewrite the
+ * golden files, and review their diff.
+ */
+class GoldenFilesTest {
+    private val roots = mutableListOf<Path>()
+
+    @After
+    fun cleanUp() = roots.forEach { CorpusGenerator.delete(it) }
+
+    @Test
+    fun singleExtension() = check("single", CorpusSpec(extensions = 1, blocksPerExtension = 15))
+
+    @Test
+    fun severalExtensions() = check("several", CorpusSpec(extensions = 3, blocksPerExtension = 10, seed = 1))
+
+    @Test
+    fun severalPackages() = check("packages", CorpusSpec(extensions = 2, blocksPerExtension = 5, packages = 2, seed = 2))
+
+    private fun check(name: String, spec: CorpusSpec) {
+        val root = Files.createTempDirectory("rush-golden").also { roots.add(it) }
+        val corpus = CorpusGenerator.generate(spec, root)
+        val result = ProcessorHarness.run(corpus, "${ProcessorOptions.REPRODUCIBLE}=true")
+        assertTrue(result.diagnostics, result.success)
+
+        val rawDir = result.rawDir
+        val outputs = if (spec.packages == 1) {
+            listOf("" to rawDir)
+        } else {
+            (0 until spec.packages).map { "com.example.corpus$it/" to rawDir.resolve("com.example.corpus$it") }
+        }
+        for ((prefix, dir) in outputs) {
+            compare(name, prefix + COMPONENTS_JSON, dir.resolve(COMPONENTS_JSON))
+            compare(name, prefix + BUILD_INFOS_JSON, dir.resolve("files").resolve(BUILD_INFOS_JSON))
+        }
+    }
+
+    private fun compare(corpus: String, goldenName: String, actualFile: Path) {
+        val actual = actualFile.readText().replace(DATE_BUILT, "\"dateBuilt\":\"<masked>\"")
+        val golden = GOLDEN_DIR.resolve(corpus).resolve(goldenName)
+
+        if (java.lang.Boolean.getBoolean(UPDATE_GOLDENS)) {
+            golden.parent.createDirectories()
+            golden.writeText(actual)
+            return
+        }
+        assertTrue("Missing golden file $golden, run the tests with -PupdateGoldens", Files.exists(golden))
+        assertEquals("$corpus/$goldenName", golden.readText(), actual)
+    }
+
+    private companion object {
+        const val COMPONENTS_JSON = "components.json"
+        const val BUILD_INFOS_JSON = "component_build_infos.json"
+        const val UPDATE_GOLDENS = "rush.update_goldens"
+
+        val GOLDEN_DIR: Path = Paths.get("src", "test", "resources", "golden")
+        val DATE_BUILT = Regex("\"dateBuilt\":\"[^\"]*\"")
+    }
+}
@@ -0,0 +1,80 @@
+package io.shreyash.rush.processor
+
+import io.shreyash.rush.processor.testing.CorpusGenerator
+import io.shreyash.rush.processor.testing.CorpusSpec
+import io.shreyash.rush.processor.testing.ProcessorHarness
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import shaded.org.json.JSONArray
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Checks that reproducible builds ([ProcessorOptions.reproducible]) of the same sources produce
+ * byte-identical descriptor files. The builds are pinned to a [ProcessorOptions.sourceDateEpoch], so
+ * that they don't depend on the date they run on.
+ */
+class ReproducibleBuildTest {
+    private val roots = mutableListOf<Path>()
+
+    @After
+    fun cleanUp() = roots.forEach { CorpusGenerator.delete(it) }
+
+    @Test
+    fun identicalProjectsProduceIdenticalFiles() {
+        val spec = CorpusSpec(extensions = 5, blocksPerExtension = 30, packages = 1, seed = 7)
+        val first = build(spec)
+        val second = build(spec)
+
+        for (file in OUTPUTS) {
+            assertArrayEquals(file, Files.readAllBytes(first.resolve(file)), Files.readAllBytes(second.resolve(file)))
+        }
+    }
+
+    @Test
+    fun rebuildingLeavesTheFilesUntouched() {
+        val root = Files.createTempDirectory("rush-reproducible").also { roots.add(it) }
+        val corpus = CorpusGenerator.generate(CorpusSpec(extensions = 2, blocksPerExtension = 20), root)
+        val rawDir = ProcessorHarness.run(corpus, *OPTIONS).rawDir
+
+        val before = OUTPUTS.map { Files.readAllBytes(rawDir.resolve(it)) to Files.getLastModifiedTime(rawDir.resolve(it)) }
+        val result = ProcessorHarness.run(corpus, *OPTIONS)
+        assertTrue(result.diagnostics, result.success)
+
+        OUTPUTS.forEachIndexed { i, file ->
+            assertArrayEquals(file, before[i].first, Files.readAllBytes(rawDir.resolve(file)))
+            assertEquals(file, before[i].second, Files.getLastModifiedTime(rawDir.resolve(file)))
+        }
+    }
+
+    @Test
+    fun extensionsAreMarkedAsBuiltOnTheSourceDate() {
+        val rawDir = build(CorpusSpec(extensions = 3, blocksPerExtension = 5))
+        val components = JSONArray(String(Files.readAllBytes(rawDir.resolve("components.json")), Charsets.UTF_8))
+
+        assertEquals(3, components.length())
+        for (i in 0 until components.length()) {
+            assertEquals("2009-02-13", components.getJSONObject(i).getString("dateBuilt"))
+        }
+    }
+
+    private fun build(spec: CorpusSpec): Path {
+        val root = Files.createTempDirectory("rush-reproducible").also { roots.add(it) }
+        val result = ProcessorHarness.run(CorpusGenerator.generate(spec, root), *OPTIONS)
+        assertTrue(result.diagnostics, result.success)
+        return result.rawDir
+    }
+
+    private companion object {
+        val OUTPUTS = listOf("components.json", "components.bin", "files/component_build_infos.json")
+
+        /** 2009-02-13T23:31:30Z. */
+        val OPTIONS = arrayOf(
+            "${ProcessorOptions.REPRODUCIBLE}=true",
+            "${ProcessorOptions.SOURCE_DATE_EPOCH}=1234567890",
+        )
+    }
+}
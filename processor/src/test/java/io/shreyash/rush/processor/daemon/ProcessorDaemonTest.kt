@@ -0,0 +1,118 @@
+package io.shreyash.rush.processor.daemon
+
+import io.shreyash.rush.processor.ProcessorOptions
+import io.shreyash.rush.processor.testing.Corpus
+import io.shreyash.rush.processor.testing.CorpusGenerator
+import io.shreyash.rush.processor.testing.CorpusSpec
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import shaded.org.json.JSONArray
+import shaded.org.json.JSONObject
+import java.io.ByteArrayOutputStream
+import java.io.PrintStream
+import java.nio.file.Files
+import java.nio.file.Path
+import javax.tools.ToolProvider
+import kotlin.io.path.appendText
+
+/**
+ * Runs requests through [ProcessorDaemon.serve], as the CLI would send them on the daemon's stdin.
+ */
+class ProcessorDaemonTest {
+    private val root: Path = Files.createTempDirectory("rush-daemon")
+    private val classesDir: Path = Files.createTempDirectory("rush-daemon-classes")
+
+    @After
+    fun cleanUp() {
+        CorpusGenerator.delete(root)
+        CorpusGenerator.delete(classesDir)
+    }
+
+    @Test
+    fun answersEveryRequestUntilShutdown() {
+        val corpus = CorpusGenerator.generate(CorpusSpec(extensions = 2, blocksPerExtension = 20), root)
+        val compile = compileRequest(corpus)
+
+        val responses = serve(
+            "{not json",
+            "",
+            JSONObject().put("type", "frobnicate").toString(),
+            compile,
+            compile,
+            JSONObject().put("type", "shutdown").toString(),
+            compile,
+        )
+
+        assertEquals(4, responses.size)
+
+        assertFalse(responses[0].getBoolean("success"))
+        assertTrue(responses[0].getString("output"), responses[0].getString("output").startsWith("Malformed request"))
+
+        assertFalse(responses[1].getBoolean("success"))
+        assertEquals("Unknown request type: frobnicate", responses[1].getString("output"))
+
+        // The first build parses the project files, the second one finds them in the cache.
+        val cold = responses[2]
+        assertTrue(cold.getString("output"), cold.getBoolean("success"))
+        assertTrue(cold.has("millis"))
+        assertEquals(cold.getString("output"), false, wasCached(cold, "rush.yml"))
+        assertEquals(cold.getString("output"), false, wasCached(cold, "AndroidManifest.xml"))
+
+        val warm = responses[3]
+        assertTrue(warm.getString("output"), warm.getBoolean("success"))
+        assertEquals(warm.getString("output"), true, wasCached(warm, "rush.yml"))
+        assertEquals(warm.getString("output"), true, wasCached(warm, "AndroidManifest.xml"))
+        assertTrue(Files.exists(root.resolve(".rush/build/raw/components.json")))
+
+        // A change to a project file invalidates its entry, and only its entry.
+        root.resolve("rush.yml").appendText("# changed\n")
+        val changed = serve(compile).single()
+        assertTrue(changed.getString("output"), changed.getBoolean("success"))
+        assertEquals(changed.getString("output"), false, wasCached(changed, "rush.yml"))
+        assertEquals(changed.getString("output"), true, wasCached(changed, "AndroidManifest.xml"))
+    }
+
+    @Test
+    fun reportsFailedCompiles() {
+        val response = serve(JSONObject().put("type", "compile").put("options", JSONArray()).toString()).single()
+        assertFalse(response.getBoolean("success"))
+        assertTrue(response.getString("output"), "sources" in response.getString("output"))
+    }
+
+    private fun compileRequest(corpus: Corpus): String = JSONObject()
+        .put("type", "compile")
+        .put(
+            "options", JSONArray(
+                listOf(
+                    "-proc:only",
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-d", classesDir.toString(),
+                    "-A${ProcessorOptions.PROJECT_ROOT}=${corpus.root.toAbsolutePath()}",
+                )
+            )
+        )
+        .put("sources", JSONArray(corpus.writeSources().map { it.toString() }))
+        .toString()
+
+    /** Serves [requests], one per line, and returns the responses. */
+    private fun serve(vararg requests: String): List<JSONObject> {
+        val compiler = checkNotNull(ToolProvider.getSystemJavaCompiler()) { "The tests must be run on a JDK." }
+        val output = ByteArrayOutputStream()
+        PrintStream(output, true, "UTF-8").use { responses ->
+            ProcessorDaemon.serve(compiler, requests.joinToString("\n").reader().buffered(), responses)
+        }
+        return output.toString("UTF-8").lines().filter { it.isNotEmpty() }.map { JSONObject(it) }
+    }
+
+    /**
+     * @return Whether the "Project files loaded" note of a compile [response] says that [file] was
+     * cached, or null if the file isn't listed.
+     */
+    private fun wasCached(response: JSONObject, file: String): Boolean? =
+        Regex("  - ${Regex.escape(file)}: [0-9.,]+ ms( \\(cached\\))?")
+            .find(response.getString("output"))
+            ?.let { it.groupValues[1].isNotEmpty() }
+}
@@ -0,0 +1,328 @@
+package io.shreyash.rush.processor.testing
+
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.io.path.createDirectories
+import kotlin.io.path.writeBytes
+import kotlin.io.path.writeText
+import kotlin.random.Random
+
+/**
+ * The shape of a synthetic extension project.
+ *
+ * @property extensions          The number of extension classes.
+ * @property blocksPerExtension  The number of blocks in each extension class. Every fifth block is
+ *                               a property, which comes with a getter, a setter and a designer
+ *                               property.
+ * @property optionLists         The number of OptionList enums per package.
+ * @property packages            The number of packages the extensions are spread over.
+ * @property permissions         The number of `<uses-permission>` elements in the manifest.
+ * @property appElements         The number of elements of each kind (activities, services,
+ *                               receivers...) under `<application>` in the manifest.
+ * @property seed                The seed of the random choices, so that a spec always generates the
+ *                               same project.
+ */
+data class CorpusSpec(
+    val extensions: Int,
+    val blocksPerExtension: Int,
+    val optionLists: Int = 2,
+    val packages: Int = 1,
+    val permissions: Int = 5,
+    val appElements: Int = 2,
+    val seed: Long = 0,
+)
+
+/**
+ * A generated extension project: the project files live in [root], while the Java [sources] are
+ * kept in memory, keyed by the fully qualified name of their top-level class.
+ */
+class Corpus(val root: Path, val sources: Map<String, String>) {
+    /** The total number of blocks (events, methods, block properties and designer properties). */
+    var blockCount = 0
+        internal set
+
+    /**
+     * Writes the [sources] to `src/` under [root], for the tools that read them from disk.
+     *
+     * @return The paths of the source files.
+     */
+    fun writeSources(): List<Path> = sources.map { (name, source) ->
+        val file = root.resolve("src").resolve(name.replace('.', '/') + ".java")
+        file.parent.createDirectories()
+        file.writeText(source)
+        file
+    }
+}
+
+/**
+ * Generates synthetic extension projects ([Corpus]) for tests and benchmarks. The extensions use
+ * every kind of block, OptionList helpers (from source), asset helpers, markdown descriptions, doc
+ * comments and deprecated blocks, and the manifest has elements of every kind the processor looks
+ * for.
+ */
+object CorpusGenerator {
+
+    fun generate(spec: CorpusSpec, root: Path): Corpus {
+        val random = Random(spec.seed)
+        root.createDirectories()
+
+        writeProjectFiles(spec, root)
+
+        val sources = linkedMapOf<String, String>()
+        var blockCount = 0
+        for (p in 0 until spec.packages) {
+            val packageName = "com.example.corpus$p"
+            for (o in 0 until spec.optionLists) {
+                sources["$packageName.Choice$o"] = optionListSource(packageName, "Choice$o", o, random)
+            }
+        }
+        for (e in 0 until spec.extensions) {
+            val packageName = "com.example.corpus${e % spec.packages}"
+            val source = ExtensionSource(packageName, "Extension$e", spec, random)
+            sources["$packageName.Extension$e"] = source.build()
+            blockCount += source.blockCount
+        }
+
+        return Corpus(root, sources).also { it.blockCount = blockCount }
+    }
+
+    private fun writeProjectFiles(spec: CorpusSpec, root: Path) {
+        root.resolve("rush.yml").writeText(
+            """
+            |version: '1.0.0'
+            |license: 'Apache-2.0'
+            |homepage: 'https://example.com/corpus'
+            |assets:
+            |  - icon.png
+            |  - data.txt
+            |authors:
+            |  - Corpus Generator
+            """.trimMargin() + "\n"
+        )
+
+        val assets = root.resolve("assets").createDirectories()
+        // Any bytes do, the processor never decodes the icon.
+        assets.resolve("icon.png").writeBytes(ByteArray(256) { it.toByte() })
+        assets.resolve("data.txt").writeText("Generated asset\n")
+
+        root.resolve("src").createDirectories().resolve("AndroidManifest.xml").writeText(manifestOf(spec))
+    }
+
+    private fun manifestOf(spec: CorpusSpec): String {
+        val sb = StringBuilder()
+        sb.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
+        sb.append("<manifest xmlns:android=\"http://schemas.android.com/apk/res/android\"\n")
+        sb.append("    xmlns:tools=\"http://schemas.android.com/tools\" package=\"com.example.corpus\">\n")
+        for (i in 0 until spec.permissions) {
+            sb.append("  <uses-permission android:name=\"android.permission.CORPUS_$i\" />\n")
+        }
+        sb.append("  <application>\n")
+        for (i in 0 until spec.appElements) {
+            sb.append("    <activity android:name=\"com.example.corpus.Activity$i\" android:exported=\"false\"")
+            sb.append(" tools:ignore=\"MissingClass\">\n")
+            sb.append("      <intent-filter>\n")
+            sb.append("        <action android:name=\"android.intent.action.VIEW\" />\n")
+            sb.append("        <category android:name=\"android.intent.category.DEFAULT\" />\n")
+            sb.append("      </intent-filter>\n")
+            sb.append("    </activity>\n")
+            sb.append("    <service android:name=\"com.example.corpus.Service$i\" android:enabled=\"true\" />\n")
+            sb.append("    <receiver android:name=\"com.example.corpus.Receiver$i\">\n")
+            sb.append("      <intent-filter><action android:name=\"com.example.corpus.ACTION_$i\" /></intent-filter>\n")
+            sb.append("    </receiver>\n")
+            sb.append("    <provider android:name=\"com.example.corpus.Provider$i\"")
+            sb.append(" android:authorities=\"com.example.corpus.provider$i\" />\n")
+            sb.append("    <meta-data android:name=\"com.example.corpus.META_$i\" android:value=\"$i\" />\n")
+        }
+        sb.append("  </application>\n")
+        sb.append("</manifest>\n")
+        return sb.toString()
+    }
+
+    /** Even enums have String underlying values, odd ones Integer values. */
+    private fun optionListSource(packageName: String, name: String, index: Int, random: Random): String {
+        val isString = index % 2 == 0
+        val type = if (isString) "String" else "Integer"
+        val constants = (0 until 3 + random.nextInt(4)).joinToString(",\n") {
+            val value = if (isString) "\"value$it\"" else "${it * 10}"
+            val annotations = when (it) {
+                0 -> "  @Default\n"
+                2 -> "  @Deprecated\n"
+                else -> ""
+            }
+            "$annotations  Option$it($value)"
+        }
+
+        return """
+            |package $packageName;
+            |
+            |import com.google.appinventor.components.common.Default;
+            |import com.google.appinventor.components.common.OptionList;
+            |
+            |public enum $name implements OptionList<$type> {
+            |$constants;
+            |
+            |  private final $type value;
+            |
+            |  $name($type value) {
+            |    this.value = value;
+            |  }
+            |
+            |  public $type toUnderlyingValue() {
+            |    return value;
+            |  }
+            |}
+            """.trimMargin() + "\n"
+    }
+
+    private class ExtensionSource(
+        private val packageName: String,
+        private val name: String,
+        private val spec: CorpusSpec,
+        private val random: Random,
+    ) {
+        var blockCount = 0
+            private set
+
+        private val members = StringBuilder()
+
+        fun build(): String {
+            for (i in 0 until spec.blocksPerExtension) {
+                when (i % 5) {
+                    0 -> event(i)
+                    1, 2 -> function(i)
+                    3 -> helperFunction(i)
+                    else -> property(i)
+                }
+            }
+
+            return """
+                |package $packageName;
+                |
+                |import com.google.appinventor.components.annotations.Asset;
+                |import com.google.appinventor.components.annotations.DesignerProperty;
+                |import com.google.appinventor.components.annotations.ExtensionComponent;
+                |import com.google.appinventor.components.annotations.Options;
+                |import com.google.appinventor.components.annotations.SimpleEvent;
+                |import com.google.appinventor.components.annotations.SimpleFunction;
+                |import com.google.appinventor.components.annotations.SimpleProperty;
+                |import java.util.List;
+                |
+                |@ExtensionComponent(
+                |    name = "$name",
+                |    description = "The **$name** extension, generated for testing. See https://example.com/$name.",
+                |    icon = "icon.png")
+                |public class $name {
+                |$members}
+                """.trimMargin() + "\n"
+        }
+
+        private fun event(i: Int) {
+            blockCount++
+            members.append(
+                """
+                |  /**
+                |   * Fired when *thing $i* happens.
+                |   */
+                |  @SimpleEvent
+                |  public void Happened$i(${params(i)}) {
+                |  }
+                |
+                """.trimMargin()
+            )
+        }
+
+        private fun function(i: Int) {
+            blockCount++
+            val returnType = listOf("void", "int", "double", "String", "boolean", "Object", "List<Object>")
+                .random(random)
+            val body = when (returnType) {
+                "void" -> ""
+                "int", "double" -> "return 0;"
+                "boolean" -> "return false;"
+                else -> "return null;"
+            }
+            val deprecated = if (i % 7 == 1) "  @Deprecated\n" else ""
+            members.append(
+                """
+                |$deprecated  @SimpleFunction(description = "Does `thing $i` with its arguments.\n\n- one\n- two")
+                |  public $returnType DoThing$i(${params(i)}) {
+                |    $body
+                |  }
+                |
+                """.trimMargin()
+            )
+        }
+
+        private fun helperFunction(i: Int) {
+            blockCount++
+            val choice = "Choice${random.nextInt(spec.optionLists.coerceAtLeast(1))}"
+            if (spec.optionLists == 0) {
+                members.append(
+                    """
+                    |  @SimpleFunction(description = "Loads an asset.")
+                    |  public void Load$i(@Asset({"png", "jpg"}) String asset) {
+                    |  }
+                    |
+                    """.trimMargin()
+                )
+                return
+            }
+            members.append(
+                """
+                |  @SimpleFunction(description = "Picks one of the ${choice}s.")
+                |  public $choice Pick$i(@Options($choice.class) String choice, @Asset({"png"}) String asset) {
+                |    return null;
+                |  }
+                |
+                """.trimMargin()
+            )
+        }
+
+        private fun property(i: Int) {
+            // A getter, a setter and a designer property.
+            blockCount += 3
+            val (type, editorType, defaultValue) = listOf(
+                Triple("String", "string", "Hello"),
+                Triple("int", "integer", "1"),
+                Triple("boolean", "boolean", "False"),
+                Triple("float", "float", "1.5"),
+            ).random(random)
+            val returned = when (type) {
+                "String" -> "\"\""
+                "boolean" -> "false"
+                else -> "0"
+            }
+            val visible = if (i % 3 == 0) ", userVisible = false" else ""
+            members.append(
+                """
+                |  @SimpleProperty(description = "The value of property $i."$visible)
+                |  public $type Value$i() {
+                |    return $returned;
+                |  }
+                |
+                |  /**
+                |   * Sets the value of property $i.
+                |   */
+                |  @DesignerProperty(editorType = "$editorType", defaultValue = "$defaultValue")
+                |  @SimpleProperty
+                |  public void Value$i($type value) {
+                |  }
+                |
+                """.trimMargin()
+            )
+        }
+
+        private fun params(i: Int): String {
+            val types = listOf("int", "double", "String", "boolean", "Object", "long")
+            return (0 until random.nextInt(4)).joinToString(", ") { "${types.random(random)} arg${i}x$it" }
+        }
+    }
+
+    /** Deletes [root] and everything in it. */
+    fun delete(root: Path) {
+        if (!Files.exists(root)) return
+        Files.walk(root).use { paths ->
+            paths.sorted(Comparator.reverseOrder()).forEach { Files.delete(it) }
+        }
+    }
+}
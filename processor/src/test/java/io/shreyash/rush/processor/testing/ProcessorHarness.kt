@@ -0,0 +1,79 @@
+package io.shreyash.rush.processor.testing
+
+import io.shreyash.rush.processor.ExtensionProcessor
+import io.shreyash.rush.processor.ProcessorOptions
+import java.io.StringWriter
+import java.net.URI
+import java.nio.file.Files
+import java.nio.file.Path
+import javax.tools.JavaFileObject
+import javax.tools.SimpleJavaFileObject
+import javax.tools.ToolProvider
+
+/**
+ * Runs [ExtensionProcessor] over a [Corpus] with the system Java compiler, in this JVM. The sources
+ * are handed to javac from memory, and unless asked to compile them, javac only runs annotation
+ * processing (`-proc:only`), so the cost measured is almost all the processor's own.
+ */
+object ProcessorHarness {
+
+    /**
+     * @property success      Whether javac reported no errors.
+     * @property diagnostics  Everything javac (and the processor) printed.
+     * @property buildDir     The `.rush/build` directory of the corpus.
+     */
+    class Result(val success: Boolean, val diagnostics: String, val buildDir: Path) {
+        val rawDir: Path get() = buildDir.resolve("raw")
+    }
+
+    /**
+     * Processes [corpus].
+     *
+     * @param options     Extra processor options, without the `-A` prefix, eg, `rush.parallel=true`.
+     *                    The project root is always set to the corpus root.
+     * @param classesDir  If set, the sources (and the ones generated by the processor) are compiled
+     *                    for real, and the classes and generated sources are left in this directory.
+     */
+    fun run(corpus: Corpus, vararg options: String, classesDir: Path? = null): Result {
+        val compiler = checkNotNull(ToolProvider.getSystemJavaCompiler()) { "The tests must be run on a JDK." }
+        val output = StringWriter()
+        val outputDir = classesDir ?: Files.createTempDirectory("rush-harness-classes")
+
+        try {
+            val args = mutableListOf<String>()
+            if (classesDir == null) args.add("-proc:only")
+            args.addAll(
+                listOf(
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-d", outputDir.toString(),
+                    "-s", outputDir.toString(),
+                    "-A${ProcessorOptions.PROJECT_ROOT}=${corpus.root.toAbsolutePath()}",
+                )
+            )
+            options.mapTo(args) { "-A$it" }
+
+            val success = compiler.getStandardFileManager(null, null, Charsets.UTF_8).use { fileManager ->
+                val task = compiler.getTask(
+                    output,
+                    fileManager,
+                    null,
+                    args,
+                    null,
+                    corpus.sources.map { (name, source) -> InMemorySource(name, source) }
+                )
+                task.setProcessors(listOf(ExtensionProcessor()))
+                task.call()
+            }
+            return Result(success, output.toString(), corpus.root.resolve(".rush").resolve("build"))
+        } finally {
+            if (classesDir == null) CorpusGenerator.delete(outputDir)
+        }
+    }
+
+    private class InMemorySource(qualifiedName: String, private val source: String) : SimpleJavaFileObject(
+        URI.create("string:///${qualifiedName.replace('.', '/')}${JavaFileObject.Kind.SOURCE.extension}"),
+        JavaFileObject.Kind.SOURCE
+    ) {
+        override fun getCharContent(ignoreEncodingErrors: Boolean): CharSequence = source
+    }
+}
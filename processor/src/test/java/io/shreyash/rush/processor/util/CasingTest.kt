@@ -0,0 +1,61 @@
+package io.shreyash.rush.processor.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.regex.Pattern
+import kotlin.random.Random
+
+/** Compares [isCamelCase] and [isPascalCase] with the regexes they replaced. */
+class CasingTest {
+
+    @Test
+    fun matchesRegexesOnExamples() {
+        val examples = listOf(
+            "", "a", "A", "fooBar", "FooBar", "foo_bar", "foo bar", "fooBar1", "1foo", "FOO", "foo\n", "Foo\r\n",
+            "foo\n\n", "foo\r", "foo\r\r", "Foo\u0085", "foo ", "Foo ", "foo\nbar", "\n", "fooBär", "Éclair",
+            "foo１", "foo٣", "ıi", "foo$", "Foo\t",
+        )
+        examples.forEach { check(it) }
+    }
+
+    @Test
+    fun matchesRegexesOnShortStrings() {
+        // Every string of up to 4 characters over an alphabet with a character of each class.
+        val alphabet = "aZ0_é\n\r "
+        var strings = listOf("")
+        repeat(4) {
+            strings = strings.flatMap { s -> alphabet.map { s + it } }
+            strings.forEach { check(it) }
+        }
+    }
+
+    @Test
+    fun matchesRegexesOnRandomStrings() {
+        val random = Random(8)
+        val alphabet = "abzABZ019_$ -\t\n\r\u0085  \u000béÄıſ１٣漢😀"
+        repeat(100_000) {
+            val length = random.nextInt(12)
+            val sb = StringBuilder()
+            // Mostly identifier-like strings, so that the interesting cases aren't drowned out.
+            if (length > 0) sb.append("aAzZ"[random.nextInt(4)])
+            while (sb.length < length) {
+                sb.append(if (random.nextInt(4) == 0) alphabet[random.nextInt(alphabet.length)] else "xY7"[random.nextInt(3)])
+            }
+            if (random.nextInt(5) == 0) sb.append(listOf("\n", "\r", "\r\n", "\u0085", " ", "\n\n").random(random))
+            check(sb.toString())
+        }
+    }
+
+    private fun check(text: String) {
+        assertEquals("camelCase: ${escape(text)}", CAMEL.matcher(text).find(), isCamelCase(text))
+        assertEquals("PascalCase: ${escape(text)}", PASCAL.matcher(text).find(), isPascalCase(text))
+    }
+
+    private fun escape(text: String) = text.map { if (it.code in 0x21..0x7e) "$it" else "\\u%04x".format(it.code) }
+        .joinToString("")
+
+    private companion object {
+        val CAMEL: Pattern = Pattern.compile("^[a-z]([A-Z0-9]*[a-z][a-z0-9]*[A-Z]|[a-z0-9]*[A-Z][A-Z0-9]*[a-z])?[A-Za-z0-9]*$")
+        val PASCAL: Pattern = Pattern.compile("^[A-Z]([A-Z0-9]*[a-z][a-z0-9]*[A-Z]|[a-z0-9]*[A-Z][A-Z0-9]*[a-z])?[A-Za-z0-9]*$")
+    }
+}
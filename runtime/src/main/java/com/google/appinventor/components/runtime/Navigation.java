@@ -354,9 +354,7 @@ public class Navigation extends AndroidNonvisibleComponent implements Component
             connection.getResponseMessage());
         return;
       }
-      final String geoJson = getResponseContent(connection);
-      Log.d(TAG, geoJson);
-      final YailDictionary response = (YailDictionary) JsonUtil.getObjectFromJson(geoJson, true);
+      final YailDictionary response = getResponseContent(connection);
       YailList features = (YailList) response.get("features");
       if (features.size() > 0) {
         YailDictionary feature = (YailDictionary) features.getObject(0);
@@ -388,24 +386,18 @@ public class Navigation extends AndroidNonvisibleComponent implements Component
     }
   }
 
-  private static String getResponseContent(HttpURLConnection connection) throws IOException {
+  private static YailDictionary getResponseContent(HttpURLConnection connection)
+      throws IOException, JSONException {
     String encoding = connection.getContentEncoding();
     if (encoding == null) {
       encoding = "UTF-8";
     }
     Log.d(TAG, Integer.toString(connection.getResponseCode()));
+    // Routes can be large, so the response is decoded as it is read instead of being read into a
+    // String first.
     InputStreamReader reader = new InputStreamReader(connection.getInputStream(), encoding);
     try {
-      int contentLength = connection.getContentLength();
-      StringBuilder sb = (contentLength != -1)
-          ? new StringBuilder(contentLength)
-          : new StringBuilder();
-      char[] buf = new char[1024];
-      int read;
-      while ((read = reader.read(buf)) != -1) {
-        sb.append(buf, 0, read);
-      }
-      return sb.toString();
+      return (YailDictionary) JsonUtil.getObjectFromJson(reader, true);
     } finally {
       reader.close();
     }
@@ -717,8 +717,9 @@ public class Web extends AndroidNonvisibleComponent implements Component {
   String buildRequestData(YailList list) throws BuildRequestDataException {
     StringBuilder sb = new StringBuilder();
     String delimiter = "";
-    for (int i = 0; i < list.size(); i++) {
-      Object item = list.getObject(i);
+    Object[] items = list.toArray();
+    for (int i = 0; i < items.length; i++) {
+      Object item = items[i];
       // Each item must be a two-element sublist.
       if (item instanceof YailList) {
         YailList sublist = (YailList) item;
@@ -1345,8 +1346,9 @@ public class Web extends AndroidNonvisibleComponent implements Component {
   private static Map<String, List<String>> processRequestHeaders(YailList list)
       throws InvalidRequestHeadersException {
     Map<String, List<String>> requestHeadersMap = Maps.newHashMap();
-    for (int i = 0; i < list.size(); i++) {
-      Object item = list.getObject(i);
+    Object[] items = list.toArray();
+    for (int i = 0; i < items.length; i++) {
+      Object item = items[i];
       // Each item must be a two-element sublist.
       if (item instanceof YailList) {
         YailList sublist = (YailList) item;
@@ -8,13 +8,13 @@ package com.google.appinventor.components.runtime.util;
 
 import com.google.appinventor.components.runtime.collect.Lists;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Pattern;
 
 /**
  * Static methods to convert between CSV-formatted strings and YailLists.
@@ -50,10 +50,77 @@ public final class CsvUtil {
     throw new IllegalArgumentException("CSV text cannot be parsed as a row.");
   }
 
+  /**
+   * Receives the rows of a CSV table one at a time, see
+   * {@link #readCsvTable(Reader, RowHandler)}.
+   */
+  public interface RowHandler {
+    void onRow(YailList row) throws Exception;
+  }
+
+  /**
+   * Parses the CSV table read from {@code in}, passing each row to
+   * {@code handler} as soon as it is parsed. Only one row is held in
+   * memory at a time, so tables of any size can be processed.
+   *
+   * @param in the reader to read the table from. It is not closed.
+   * @param handler the handler to pass the rows to
+   * @throws Exception if the table is malformed, if it can't be read,
+   *     or if the handler throws
+   */
+  public static void readCsvTable(Reader in, RowHandler handler) throws Exception {
+    CsvParser csvParser = new CsvParser(in);
+    while (csvParser.hasNext()) {
+      handler.onRow(YailList.makeList(csvParser.next()));
+    }
+    csvParser.throwAnyProblem();
+  }
+
+  /**
+   * Reads a CSV table in chunks of rows, for tables that are too large
+   * to be turned into a single list, such as the contents of big files
+   * or web responses.
+   */
+  public static final class ChunkedReader implements Closeable {
+    private final Reader in;
+    private final CsvParser csvParser;
+
+    public ChunkedReader(Reader in) {
+      this.in = in;
+      this.csvParser = new CsvParser(in);
+    }
+
+    /**
+     * Returns a list of the next {@code maxRows} rows of the table, or of
+     * fewer rows if the end of the table is reached. The list is empty
+     * once all the rows have been read.
+     *
+     * @throws Exception if the table is malformed or can't be read
+     */
+    public YailList nextChunk(int maxRows) throws Exception {
+      ArrayList<YailList> rows = new ArrayList<YailList>();
+      while (rows.size() < maxRows && csvParser.hasNext()) {
+        rows.add(YailList.makeList(csvParser.next()));
+      }
+      csvParser.throwAnyProblem();
+      return YailList.makeList(rows);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
   // Requires: elements of csvRow are strings
   public static String toCsvRow(YailList csvRow) {
     StringBuilder csvStringBuilder = new StringBuilder();
-    makeCsvRow(csvRow, csvStringBuilder);
+    try {
+      writeCsvRow(csvRow, csvStringBuilder);
+    } catch (IOException e) {
+      // A StringBuilder doesn't throw.
+      throw new IllegalStateException(e);
+    }
     return csvStringBuilder.toString();
   }
 
@@ -62,24 +129,76 @@ public final class CsvUtil {
   // all rows have same number of elements?
   public static String toCsvTable(YailList csvList) {
     StringBuilder csvStringBuilder = new StringBuilder();
+    try {
+      writeCsvTable(csvList, csvStringBuilder);
+    } catch (IOException e) {
+      // A StringBuilder doesn't throw.
+      throw new IllegalStateException(e);
+    }
+    return csvStringBuilder.toString();
+  }
+
+  /**
+   * Writes the CSV table {@code csvList}, a list of rows, to {@code out}.
+   *
+   * @throws IOException if writing to {@code out} fails
+   */
+  public static void writeCsvTable(YailList csvList, Appendable out) throws IOException {
     for (Object rowObj : csvList.toArray()) {
-      makeCsvRow((YailList) rowObj, csvStringBuilder);
+      writeCsvRow((YailList) rowObj, out);
       // http://tools.ietf.org/html/rfc4180 suggests that CSV lines should be
       // terminated
       // by CRLF, hence the \r\n.
-      csvStringBuilder.append("\r\n");
+      out.append("\r\n");
     }
-    return csvStringBuilder.toString();
   }
 
-  private static void makeCsvRow(YailList row, StringBuilder csvStringBuilder) {
-    String fieldDelim = "";
-    for (Object fieldObj : row.toArray()) {
-      String field = fieldObj.toString();
-      field = field.replaceAll("\"", "\"\"");
-      csvStringBuilder.append(fieldDelim).append("\"").append(field).append("\"");
-      fieldDelim = ",";
+  /**
+   * Writes the CSV row {@code row} to {@code out}, without a line
+   * terminator. Fields are only quoted when they need to be.
+   *
+   * @throws IOException if writing to {@code out} fails
+   */
+  public static void writeCsvRow(YailList row, Appendable out) throws IOException {
+    Object[] fields = row.toArray();
+    for (int i = 0; i < fields.length; i++) {
+      if (i > 0) {
+        out.append(',');
+      }
+      // The parser drops an empty cell at the end of a line, so an empty
+      // last field is quoted. This also keeps a row with a single empty
+      // field from turning into an empty line.
+      writeCsvField(fields[i].toString(), i == fields.length - 1, out);
+    }
+  }
+
+  /**
+   * Writes a single field, quoting it only if it contains a delimiter, a
+   * line terminator or a quote (or if {@code quoteIfEmpty} is set and the
+   * field is empty). Quotes are escaped by doubling them.
+   */
+  private static void writeCsvField(String field, boolean quoteIfEmpty, Appendable out)
+      throws IOException {
+    boolean needsQuotes = quoteIfEmpty && field.isEmpty();
+    for (int i = 0; i < field.length() && !needsQuotes; i++) {
+      char c = field.charAt(i);
+      needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!needsQuotes) {
+      out.append(field);
+      return;
+    }
+
+    out.append('"');
+    int start = 0;
+    for (int i = 0; i < field.length(); i++) {
+      if (field.charAt(i) == '"') {
+        // Write up to and including the quote, which is then doubled.
+        out.append(field, start, i + 1).append('"');
+        start = i + 1;
+      }
     }
+    out.append(field, start, field.length()).append('"');
   }
 
   /*
@@ -89,11 +208,6 @@ public final class CsvUtil {
    *
    */
   private static class CsvParser implements Iterator<List<String>> {
-    /**
-     * Escaped quotes in quoted cells are doubled.
-     */
-    private final Pattern ESCAPED_QUOTE_PATTERN = Pattern.compile("\"\"");
-
     /**
      * Character buffer for cell parsing. The size limits the largest parsable
      * cell. Specifically, if an unquoted cell and its trailing delimiter exceed
@@ -179,8 +293,7 @@ public final class CsvUtil {
           // leading an trailing spaces here
           result.add(new String(buf, pos, cellLength).trim());
         } else {
-          String cell = new String(buf, pos + 1, cellLength - 2);
-          result.add(ESCAPED_QUOTE_PATTERN.matcher(cell).replaceAll("\"").trim());
+          result.add(unescapeQuotedCell(pos + 1, cellLength - 2).trim());
         }
         trailingComma = delimitedCellLength > 0 && buf[pos + delimitedCellLength - 1] == ',';
         pos += delimitedCellLength;
@@ -190,6 +303,22 @@ public final class CsvUtil {
       return result;
     }
 
+    /**
+     * Returns the contents of a quoted cell, in which quotes are escaped
+     * by doubling them.
+     */
+    private String unescapeQuotedCell(int start, int length) {
+      StringBuilder sb = new StringBuilder(length);
+      int end = start + length;
+      for (int i = start; i < end; i++) {
+        sb.append(buf[i]);
+        if (buf[i] == '"' && i + 1 < end && buf[i + 1] == '"') {
+          i++;
+        }
+      }
+      return sb.toString();
+    }
+
     public long getCharPosition() {
       return previouslyRead + pos;
     }
@@ -8,10 +8,12 @@ package com.google.appinventor.components.runtime.util;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
@@ -34,10 +36,11 @@ public class JavaStringUtils {
   private static class MappingOrder {
     /**
      * Changes the order of the specified key list
-     * @param keys  List of keys
-     * @param text  Text in which to search for keys
+     * @param keys              List of keys
+     * @param firstOccurrences  Index of the first occurrence of each key
+     *                          in the text; keys that do not occur are absent
      */
-    public void changeOrder(List<String> keys, String text) {
+    public void changeOrder(List<String> keys, Map<String, Integer> firstOccurrences) {
       // Default option: Do nothing (dictionary order)
     }
   }
@@ -47,7 +50,7 @@ public class JavaStringUtils {
    */
   private static class MappingLongestStringFirstOrder extends MappingOrder {
     @Override
-    public void changeOrder(List<String> keys, String text) {
+    public void changeOrder(List<String> keys, Map<String, Integer> firstOccurrences) {
       Collections.sort(keys, new Comparator<String>() {
         @Override
         public int compare(String s, String t1) {
@@ -69,31 +72,15 @@ public class JavaStringUtils {
    */
   private static class MappingEarliestOccurrenceFirstOrder extends MappingOrder {
     @Override
-    public void changeOrder(List<String> keys, String text) {
-      // Construct a map for first index of occurrence for String
-      final Map<String, Integer> occurrenceIndices = new HashMap<>();
-
-      // TODO: Can we optimize the O(mn) loop with m = length of text,
-      // TODO: n = number of keys?
-      for (String key : keys) {
-        int firstIndex = text.indexOf(key);
-
-        // No first index; Key should gain less priority than
-        // other occurrences (this value can be arbitrary)
-        if (firstIndex == -1) {
-          firstIndex = text.length() + occurrenceIndices.size();
-        }
-
-        // Map key to first index of occurrence
-        occurrenceIndices.put(key, firstIndex);
-      }
-
+    public void changeOrder(List<String> keys, final Map<String, Integer> firstOccurrences) {
       Collections.sort(keys, new Comparator<String>() {
         @Override
         public int compare(String s, String t1) {
-          // Sort in ascending order by first index in String
-          int id1 = occurrenceIndices.get(s);
-          int id2 = occurrenceIndices.get(t1);
+          // Sort in ascending order by first index in String. Keys that
+          // do not occur have no replacements, so their position does
+          // not matter; they go last.
+          int id1 = firstIndexOf(s);
+          int id2 = firstIndexOf(t1);
 
           if (id1 == id2) {
             // Use longer string instead if indices equal
@@ -103,6 +90,11 @@ public class JavaStringUtils {
             return Integer.compare(id1, id2);
           }
         }
+
+        private int firstIndexOf(String key) {
+          Integer firstIndex = firstOccurrences.get(key);
+          return firstIndex != null ? firstIndex : Integer.MAX_VALUE;
+        }
       });
     }
   }
@@ -167,6 +159,25 @@ public class JavaStringUtils {
   private static final MappingOrder mappingOrderEarliestOccurrence = new MappingEarliestOccurrenceFirstOrder();
   private static final Comparator<Range> rangeComparator = new RangeComparator();
 
+  /**
+   * Maximum number of key lists whose matchers are kept in
+   * {@link #matcherCache}.
+   */
+  static final int MATCHER_CACHE_SIZE = 16;
+
+  /**
+   * Matchers for the key lists of recently used mappings, so that apps that
+   * apply the same dictionary repeatedly only build its automaton once.
+   * Access is synchronized on the map itself.
+   */
+  private static final Map<List<String>, MultiStringMatcher> matcherCache =
+      new LinkedHashMap<List<String>, MultiStringMatcher>(MATCHER_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, MultiStringMatcher> eldest) {
+          return size() > MATCHER_CACHE_SIZE;
+        }
+      };
+
   /**
    * Java implementation of join-strings since the Kawa version appears to run of space.
    * See runtime.scm
@@ -292,14 +303,145 @@ public class JavaStringUtils {
       stringMappings.put(key, value);
     }
 
+    if (keys.contains("")) {
+      // An empty key matches between every two characters, which the
+      // automaton does not model. Keep the range-based implementation
+      // for these rare mappings.
+      Map<String, Integer> firstOccurrences = new HashMap<>();
+      for (String key : keys) {
+        int firstIndex = text.indexOf(key);
+        if (firstIndex != -1) {
+          firstOccurrences.put(key, firstIndex);
+        }
+      }
+      order.changeOrder(keys, firstOccurrences);
+      return applyMappings(text, stringMappings, keys);
+    }
+
+    return applyMappingsSinglePass(text, stringMappings, keys, order);
+  }
+
+  /**
+   * Returns the matcher for the given keys, building it if it is not cached.
+   */
+  static MultiStringMatcher getMatcher(List<String> keys) {
+    synchronized (matcherCache) {
+      MultiStringMatcher matcher = matcherCache.get(keys);
+      if (matcher == null) {
+        matcher = new MultiStringMatcher(keys);
+        matcherCache.put(keys, matcher);
+      }
+      return matcher;
+    }
+  }
+
+  /**
+   * Auxiliary function to apply the mappings to the given text string with
+   * a single pass of an Aho-Corasick automaton over the text. The result is
+   * the same as the one of {@link #applyMappings(String, Map, List)} with
+   * the keys in the given order:
+   *
+   * <ol>
+   *   <li>The occurrences of each key are taken left to right, skipping the
+   *   ones that overlap the previous taken occurrence of the same key
+   *   (as a regex matcher would find them).</li>
+   *   <li>Keys are then applied in the given order, and an occurrence is
+   *   replaced unless it overlaps an occurrence already set for
+   *   replacement.</li>
+   * </ol>
+   *
+   * The result is built in a single buffer.
+   *
+   * @param text      Text to apply mappings to
+   * @param mappings  Mappings in the form {String -> String}
+   * @param keys      List of non-empty keys, in dictionary order
+   * @param order     Order to use for replacing mappings
+   * @return  String with the mappings applied
+   */
+  private static String applyMappingsSinglePass(String text, Map<String, String> mappings,
+      List<String> keys, MappingOrder order) {
+    final int keyCount = keys.size();
+    final int[] keyLengths = new int[keyCount];
+    for (int k = 0; k < keyCount; k++) {
+      keyLengths[k] = keys.get(k).length();
+    }
+
+    // Occurrence step: collect the start indices of the occurrences of each
+    // key, in a single pass over the text.
+    final int[][] starts = new int[keyCount][];
+    final int[] startCounts = new int[keyCount];
+    final int[] lastEnds = new int[keyCount];
+    getMatcher(keys).match(text, new MultiStringMatcher.MatchHandler() {
+      @Override
+      public void onMatch(int key, int end) {
+        int start = end - keyLengths[key];
+        if (start < lastEnds[key]) {
+          // Overlaps the previous occurrence of the same key.
+          return;
+        }
+        lastEnds[key] = end;
+        if (starts[key] == null) {
+          starts[key] = new int[4];
+        } else if (startCounts[key] == starts[key].length) {
+          starts[key] = Arrays.copyOf(starts[key], startCounts[key] * 2);
+        }
+        starts[key][startCounts[key]++] = start;
+      }
+    });
+
+    Map<String, Integer> keyIndices = new HashMap<>();
+    Map<String, Integer> firstOccurrences = new HashMap<>();
+    for (int k = 0; k < keyCount; k++) {
+      keyIndices.put(keys.get(k), k);
+      if (startCounts[k] > 0) {
+        firstOccurrences.put(keys.get(k), starts[k][0]);
+      }
+    }
+    if (firstOccurrences.isEmpty()) {
+      return text;
+    }
+
     // Change the order of the keys based on the given Order object
-    // TODO: If we have stream support, we can sort the stringMappings map
-    // TODO: directly provided we initialize it to a LinkedHashMap.
-    // TODO: It could save some memory in the long run.
-    order.changeOrder(keys, text);
+    List<String> orderedKeys = new ArrayList<>(keys);
+    order.changeOrder(orderedKeys, firstOccurrences);
+
+    // Selection step: apply the keys in order, marking the characters that
+    // are set for replacement so that overlapping occurrences are skipped.
+    boolean[] covered = new boolean[text.length()];
+    int[] replacementKeys = new int[text.length()];
+    Arrays.fill(replacementKeys, -1);
+    for (String key : orderedKeys) {
+      int k = keyIndices.get(key);
+      for (int i = 0; i < startCounts[k]; i++) {
+        int start = starts[k][i];
+        int end = start + keyLengths[k];
+        boolean overlaps = false;
+        for (int j = start; j < end && !overlaps; j++) {
+          overlaps = covered[j];
+        }
+        if (!overlaps) {
+          Arrays.fill(covered, start, end, true);
+          replacementKeys[start] = k;
+        }
+      }
+    }
 
-    // Apply mappings owith re-ordered keys and mappings
-    return applyMappings(text, stringMappings, keys);
+    // Replacement step: copy the text with the selected occurrences replaced.
+    StringBuilder sb = new StringBuilder(text.length());
+    int copyFrom = 0;
+    int i = 0;
+    while (i < text.length()) {
+      int k = replacementKeys[i];
+      if (k == -1) {
+        i++;
+        continue;
+      }
+      sb.append(text, copyFrom, i).append(mappings.get(keys.get(k)));
+      i += keyLengths[k];
+      copyFrom = i;
+    }
+    sb.append(text, copyFrom, text.length());
+    return sb.toString();
   }
 
   /**
@@ -318,6 +460,9 @@ public class JavaStringUtils {
    * will ever hit the start point of the last range, therefore all indices
    * of the previous range remain unaffected)
    *
+   * Only used for mappings with an empty key, see
+   * {@link #applyMappingsSinglePass(String, Map, List, MappingOrder)}.
+   *
    * TODO: By optimizing the way strings are replaced (reducing substrings
    * TODO: to use on smaller strings), we can achieve better runtime complexity
    * TODO: on this end.
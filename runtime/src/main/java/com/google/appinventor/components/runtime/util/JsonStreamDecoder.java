@@ -0,0 +1,491 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONException;
+
+/**
+ * A pull-based JSON decoder that builds YAIL values directly from a {@link Reader}, without first
+ * building an org.json tree and then converting it.
+ *
+ * The grammar is the (lenient) one of Android's {@code org.json.JSONTokener}, and the values it
+ * produces are the same as the ones {@link JsonUtil#getObjectFromJson(String, boolean)} produced by
+ * converting the tree with {@link JsonUtil#convertJsonItem(Object, boolean)}: nested strings
+ * "true" and "false" become Booleans, nested nulls become the string "null", and the entries of
+ * objects are sorted by key.
+ *
+ */
+final class JsonStreamDecoder {
+
+  static final int BUFFER_SIZE = 8192;
+
+  /** Characters that end an unquoted literal, in addition to line terminators. */
+  private static final String LITERAL_TERMINATORS = "{}[]/\\:,=;# \t\f";
+
+  /** Marks a JSON null, which is converted differently at the top level. */
+  private static final Object NULL = new Object();
+
+  /** Marks a missing array item, see {@link #readArray(boolean)}. */
+  private static final Object MISSING = new Object();
+
+  /**
+   * A value that org.json parsed but that convertJsonItem then refused to convert: an array with
+   * a missing item, or an array or object containing one. The decoding only fails if the value is
+   * not discarded, as it is when a later entry of the same object has the same key.
+   */
+  private static final class Invalid {
+    final String message;
+
+    Invalid(String message) {
+      this.message = message;
+    }
+  }
+
+  private final Reader reader;
+  private final boolean useDicts;
+
+  /**
+   * buffer[0] holds the last character of the previous chunk, so that a single character can
+   * always be pushed back with {@code pos--}.
+   */
+  private final char[] buffer;
+  private int pos = 1;
+  private int limit = 1;
+
+  /** Number of characters consumed before the current chunk, for error messages. */
+  private long consumedBefore = -1;
+
+  JsonStreamDecoder(Reader reader, boolean useDicts) {
+    this(reader, useDicts, BUFFER_SIZE);
+  }
+
+  /**
+   * @param bufferSize the number of characters to read at a time, for example the length of the
+   *     input if it is known to be shorter than {@link #BUFFER_SIZE}
+   */
+  JsonStreamDecoder(Reader reader, boolean useDicts, int bufferSize) {
+    this.reader = reader;
+    this.useDicts = useDicts;
+    this.buffer = new char[bufferSize + 1];
+  }
+
+  /**
+   * Decodes the first JSON value of the input. An empty input decodes to the empty string, like
+   * in {@link JsonUtil#getObjectFromJson(String, boolean)}.
+   */
+  Object decode() throws JSONException, IOException {
+    if (peek() == -1) {
+      return "";
+    }
+
+    int c = nextClean();
+    Object value;
+    switch (c) {
+      case -1:
+        throw syntaxError("End of input");
+      case '{':
+        return valid(readObject(useDicts));
+      case '[':
+        // Top-level arrays are not turned into YailLists.
+        return valid(readArray(useDicts));
+      case '\'':
+      case '"':
+        // Top-level strings are not turned into Booleans.
+        return readString((char) c);
+      default:
+        pos--;
+        value = readLiteral();
+    }
+    return value == NULL ? null : value;
+  }
+
+  /** Reads a value nested in an array or object, converted like convertJsonItem does. */
+  private Object readValue(boolean dicts) throws JSONException, IOException {
+    int c = nextClean();
+    switch (c) {
+      case -1:
+        throw syntaxError("End of input");
+      case '{':
+        return readObject(dicts);
+      case '[':
+        Object items = readArray(dicts);
+        return dicts && items instanceof List ? YailList.makeList((List<?>) items) : items;
+      case '\'':
+      case '"':
+        return convertString(readString((char) c));
+      default:
+        pos--;
+        Object value = readLiteral();
+        if (value == NULL) {
+          return "null";
+        } else if (value instanceof String) {
+          return convertString((String) value);
+        }
+        return value;
+    }
+  }
+
+  private static Object valid(Object value) throws JSONException {
+    if (value instanceof Invalid) {
+      throw new JSONException(((Invalid) value).message);
+    }
+    return value;
+  }
+
+  private static Object convertString(String s) {
+    if (s.equalsIgnoreCase("false")) {
+      return false;
+    } else if (s.equalsIgnoreCase("true")) {
+      return true;
+    }
+    return s;
+  }
+
+  private Object readObject(boolean dicts) throws JSONException, IOException {
+    // Duplicate keys keep the last value, and the entries end up sorted by key.
+    TreeMap<String, Object> entries = new TreeMap<String, Object>();
+
+    int first = nextClean();
+    if (first != '}') {
+      if (first != -1) {
+        pos--;
+      }
+
+      while (true) {
+        String name = readName();
+
+        int separator = nextClean();
+        if (separator != ':' && separator != '=') {
+          throw syntaxError("Expected ':' after " + name);
+        }
+        if (peek() == '>') {
+          pos++;
+        }
+
+        Object value = readValue(dicts);
+        if (value instanceof Double
+            && (((Double) value).isNaN() || ((Double) value).isInfinite())) {
+          throw new JSONException("Forbidden numeric value: " + value);
+        }
+        entries.put(name, value);
+
+        int c = nextClean();
+        if (c == '}') {
+          break;
+        } else if (c != ';' && c != ',') {
+          throw syntaxError("Unterminated object");
+        }
+      }
+    }
+
+    // convertJsonItem converted the entries in the order of their keys.
+    for (Object value : entries.values()) {
+      if (value instanceof Invalid) {
+        return value;
+      }
+    }
+
+    if (dicts) {
+      YailDictionary result = new YailDictionary();
+      for (Map.Entry<String, Object> entry : entries.entrySet()) {
+        result.put(entry.getKey(), entry.getValue());
+      }
+      return result;
+    } else {
+      List<Object> result = new ArrayList<Object>();
+      for (Map.Entry<String, Object> entry : entries.entrySet()) {
+        List<Object> pair = new ArrayList<Object>();
+        pair.add(entry.getKey());
+        pair.add(entry.getValue());
+        result.add(pair);
+      }
+      return result;
+    }
+  }
+
+  /** Reads the name of an object entry, which may be a quoted string or an unquoted literal. */
+  private String readName() throws JSONException, IOException {
+    int c = nextClean();
+    Object name;
+    switch (c) {
+      case -1:
+        throw syntaxError("End of input");
+      case '\'':
+      case '"':
+        return readString((char) c);
+      case '{':
+      case '[':
+        throw syntaxError("Names must be strings, but found a nested value");
+      default:
+        pos--;
+        name = readLiteral();
+    }
+
+    if (name instanceof String) {
+      return (String) name;
+    } else if (name == NULL) {
+      throw syntaxError("Names cannot be null");
+    }
+    throw syntaxError("Names must be strings, but " + name + " is of type "
+        + name.getClass().getName());
+  }
+
+  /**
+   * Reads the items of an array, as a list or as an {@link Invalid} value. Like in Android's
+   * JSONTokener, a separator with no value before it, or right before the closing bracket, stands
+   * for a missing value, which convertJsonItem refused to convert.
+   */
+  private Object readArray(boolean dicts) throws JSONException, IOException {
+    List<Object> result = new ArrayList<Object>();
+    boolean hasTrailingSeparator = false;
+    while (true) {
+      switch (nextClean()) {
+        case -1:
+          throw syntaxError("Unterminated array");
+        case ']':
+          if (hasTrailingSeparator) {
+            result.add(MISSING);
+          }
+          return checkItems(result);
+        case ',':
+        case ';':
+          result.add(MISSING);
+          hasTrailingSeparator = true;
+          continue;
+        default:
+          pos--;
+      }
+
+      result.add(readValue(dicts));
+
+      switch (nextClean()) {
+        case ']':
+          return checkItems(result);
+        case ',':
+        case ';':
+          hasTrailingSeparator = true;
+          continue;
+        default:
+          throw syntaxError("Unterminated array");
+      }
+    }
+  }
+
+  /** Returns {@code items}, or an {@link Invalid} value if one of them is missing or invalid. */
+  private static Object checkItems(List<Object> items) {
+    for (int i = 0; i < items.size(); i++) {
+      Object item = items.get(i);
+      if (item == MISSING) {
+        return new Invalid("Value at " + i + " is null.");
+      } else if (item instanceof Invalid) {
+        return item;
+      }
+    }
+    return items;
+  }
+
+  private String readString(char quote) throws JSONException, IOException {
+    StringBuilder sb = new StringBuilder();
+    while (true) {
+      int c = read();
+      if (c == -1) {
+        throw syntaxError("Unterminated string");
+      } else if (c == quote) {
+        return sb.toString();
+      } else if (c == '\\') {
+        sb.append(readEscapeCharacter());
+      } else {
+        sb.append((char) c);
+      }
+    }
+  }
+
+  private char readEscapeCharacter() throws JSONException, IOException {
+    int escaped = read();
+    switch (escaped) {
+      case -1:
+        throw syntaxError("Unterminated escape sequence");
+      case 'u':
+        char[] hex = new char[4];
+        for (int i = 0; i < 4; i++) {
+          int c = read();
+          if (c == -1) {
+            throw syntaxError("Unterminated escape sequence");
+          }
+          hex[i] = (char) c;
+        }
+        try {
+          return (char) Integer.parseInt(new String(hex), 16);
+        } catch (NumberFormatException e) {
+          throw syntaxError("Invalid escape sequence: " + new String(hex));
+        }
+      case 't':
+        return '\t';
+      case 'b':
+        return '\b';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 'f':
+        return '\f';
+      default:
+        return (char) escaped;
+    }
+  }
+
+  /**
+   * Reads an unquoted literal: null, a Boolean, a number (decimal, octal or hexadecimal) or, if
+   * it is none of these, a string.
+   */
+  private Object readLiteral() throws JSONException, IOException {
+    StringBuilder sb = new StringBuilder();
+    while (true) {
+      int c = peek();
+      if (c == -1 || c == '\r' || c == '\n' || LITERAL_TERMINATORS.indexOf(c) != -1) {
+        break;
+      }
+      sb.append((char) c);
+      pos++;
+    }
+
+    String literal = sb.toString();
+    if (literal.length() == 0) {
+      throw syntaxError("Expected literal value");
+    } else if ("null".equalsIgnoreCase(literal)) {
+      return NULL;
+    } else if ("true".equalsIgnoreCase(literal)) {
+      return Boolean.TRUE;
+    } else if ("false".equalsIgnoreCase(literal)) {
+      return Boolean.FALSE;
+    }
+
+    if (literal.indexOf('.') == -1) {
+      int base = 10;
+      String number = literal;
+      if (number.startsWith("0x") || number.startsWith("0X")) {
+        number = number.substring(2);
+        base = 16;
+      } else if (number.startsWith("0") && number.length() > 1) {
+        number = number.substring(1);
+        base = 8;
+      }
+      try {
+        long longValue = Long.parseLong(number, base);
+        if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+          return (int) longValue;
+        } else {
+          return longValue;
+        }
+      } catch (NumberFormatException e) {
+        // Integers that don't fit in a long, exponents and unquoted strings. Try floating point.
+      }
+    }
+
+    try {
+      return Double.valueOf(literal);
+    } catch (NumberFormatException ignored) {
+      // Not a number, so it is an unquoted string.
+    }
+    return literal;
+  }
+
+  /** Returns the next character that is not whitespace or part of a comment, or -1. */
+  private int nextClean() throws JSONException, IOException {
+    while (true) {
+      int c = read();
+      switch (c) {
+        case '\t':
+        case ' ':
+        case '\n':
+        case '\r':
+          continue;
+        case '/':
+          int peek = peek();
+          if (peek == '*') {
+            pos++;
+            skipBlockComment();
+            continue;
+          } else if (peek == '/') {
+            pos++;
+            skipToEndOfLine();
+            continue;
+          }
+          return c;
+        case '#':
+          skipToEndOfLine();
+          continue;
+        default:
+          return c;
+      }
+    }
+  }
+
+  private void skipBlockComment() throws JSONException, IOException {
+    int previous = -1;
+    while (true) {
+      int c = read();
+      if (c == -1) {
+        throw syntaxError("Unterminated comment");
+      } else if (previous == '*' && c == '/') {
+        return;
+      }
+      previous = c;
+    }
+  }
+
+  private void skipToEndOfLine() throws IOException {
+    while (true) {
+      int c = read();
+      if (c == -1 || c == '\r' || c == '\n') {
+        return;
+      }
+    }
+  }
+
+  private int read() throws IOException {
+    int c = peek();
+    if (c != -1) {
+      pos++;
+    }
+    return c;
+  }
+
+  /** Returns the next character without consuming it, or -1 at the end of the input. */
+  private int peek() throws IOException {
+    if (pos < limit) {
+      return buffer[pos];
+    }
+
+    // Keep the last character around, so that it can still be pushed back.
+    if (limit > 1) {
+      buffer[0] = buffer[limit - 1];
+    }
+    consumedBefore += limit - 1;
+    pos = 1;
+    limit = 1;
+
+    int n;
+    do {
+      n = reader.read(buffer, 1, buffer.length - 1);
+    } while (n == 0);
+    if (n == -1) {
+      return -1;
+    }
+    limit = 1 + n;
+    return buffer[pos];
+  }
+
+  private JSONException syntaxError(String message) {
+    return new JSONException(message + " at character " + (consumedBefore + pos));
+  }
+}
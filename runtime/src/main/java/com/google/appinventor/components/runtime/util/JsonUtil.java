@@ -18,6 +18,9 @@ import gnu.math.IntFraction;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -32,7 +35,6 @@ import java.util.TreeSet;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
 /**
  * Provides utility functions to convert between Java object and JSON.
@@ -244,14 +246,39 @@ public class JsonUtil {
   }
 
   public static String getJsonRepresentation(Object value) throws JSONException {
+    StringBuilder sb = new StringBuilder();
+    try {
+      writeJsonRepresentation(value, sb);
+    } catch (IOException e) {
+      // A StringBuilder doesn't throw.
+      throw new JSONException(e.getMessage());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes the JSON representation of {@code value} to {@code out}. The whole value graph is
+   * written to the same sink, so nested values are never copied, whatever their depth. The text
+   * is the same as the one returned by {@link #getJsonRepresentation(Object)}.
+   *
+   * @param value the value to encode
+   * @param out the sink to write the JSON text to
+   * @throws JSONException if the value can't be encoded, for example a number that is not finite
+   * @throws IOException if writing to {@code out} fails
+   */
+  public static void writeJsonRepresentation(Object value, Appendable out)
+      throws JSONException, IOException {
     if (value == null || value.equals(null)) {
-      return "null";
+      out.append("null");
+      return;
     }
     if (value instanceof FString) {
-      return JSONObject.quote(value.toString());
+      out.append(JSONObject.quote(value.toString()));
+      return;
     }
     if (value instanceof YailList) {
-      return ((YailList) value).toJSONString();
+      ((YailList) value).writeJSONString(out);
+      return;
     }
     // The Json tokener used in getObjectFromJson cannot handle
     // fractions.  So we Json encode fractions by first converting
@@ -261,44 +288,46 @@ public class JsonUtil {
     // StoreValue.  See the "warning" comment in runtime.scm at
     // call-component-method.
     if (value instanceof IntFraction) {
-      return JSONObject.numberToString((Number) ((IntFraction)value).doubleValue());
+      out.append(JSONObject.numberToString((Number) ((IntFraction)value).doubleValue()));
+      return;
     }
     if (value instanceof Number) {
-      return JSONObject.numberToString((Number) value);
+      out.append(JSONObject.numberToString((Number) value));
+      return;
     }
     if (value instanceof Boolean) {
-      return value.toString();
+      out.append(value.toString());
+      return;
     }
     if (value instanceof List) {
       value = ((List)value).toArray();
     }
     if (value instanceof YailDictionary) {
-      StringBuilder sb = new StringBuilder();
       YailDictionary dict = (YailDictionary) value;
       String sep = "";
-      sb.append('{');
+      out.append('{');
       for (Entry<Object, Object> entry : (Set<Entry<Object, Object>>) dict.entrySet()) {
-        sb.append(sep);
-        sb.append(JSONObject.quote(entry.getKey().toString()));
-        sb.append(':');
-        sb.append(getJsonRepresentation(entry.getValue()));
+        out.append(sep);
+        out.append(JSONObject.quote(entry.getKey().toString()));
+        out.append(':');
+        writeJsonRepresentation(entry.getValue(), out);
         sep = ",";
       }
-      sb.append('}');
-      return sb.toString();
+      out.append('}');
+      return;
     }
     if (value.getClass().isArray()) {
-      StringBuilder sb = new StringBuilder();
-      sb.append("[");
+      out.append('[');
       String separator = "";
       for (Object o: (Object[]) value) {
-        sb.append(separator).append(getJsonRepresentation(o));
+        out.append(separator);
+        writeJsonRepresentation(o, out);
         separator = ",";
       }
-      sb.append("]");
-      return sb.toString();
+      out.append(']');
+      return;
     }
-    return JSONObject.quote(value.toString());
+    out.append(JSONObject.quote(value.toString()));
   }
 
   /**
@@ -333,29 +362,32 @@ public class JsonUtil {
     if ((jsonString == null) || jsonString.equals("")) {
       // We'd like the empty string to decode to the empty string.  Form.java
       // relies on this for the case where there's an activity result with no intent data.
-      // We handle this case explicitly since nextValue() appears to throw an error
-      // when given the empty string.
       return "";
-    } else {
-      final Object value = (new JSONTokener(jsonString)).nextValue();
-      // Note that the JSONTokener may return a value equals() to null.
-      if (value == null || value.equals(JSONObject.NULL)) {
-        return null;
-      } else if ((value instanceof String) ||
-          (value instanceof Number) ||
-          (value instanceof Boolean)) {
-        return value;
-      } else if (value instanceof JSONArray) {
-        return getListFromJsonArray((JSONArray)value, useDicts);
-      } else if (value instanceof JSONObject) {
-        if (useDicts) {
-          return getDictionaryFromJsonObject((JSONObject) value);
-        } else {
-          return getListFromJsonObject((JSONObject) value);
-        }
-      }
-      throw new JSONException("Invalid JSON string.");
     }
+    try {
+      int bufferSize = Math.min(jsonString.length(), JsonStreamDecoder.BUFFER_SIZE);
+      return new JsonStreamDecoder(new StringReader(jsonString), useDicts, bufferSize).decode();
+    } catch (IOException e) {
+      // A StringReader doesn't throw.
+      throw new JSONException(e.getMessage());
+    }
+  }
+
+  /**
+   * Parses the JSON content read from {@code reader} into a YAIL object, in a single pass and
+   * without reading the whole content into a String first. The values are the same as the ones
+   * {@link #getObjectFromJson(String, boolean)} returns for the same content.
+   *
+   * @param reader the reader to read the JSON text from. It is not closed.
+   * @param useDicts true if YailDictionary should be used for JSON objects,
+   *                 false for associative lists
+   * @return the parsed object
+   * @throws JSONException if the JSON is malformed
+   * @throws IOException if the JSON text can't be read
+   */
+  public static Object getObjectFromJson(Reader reader, boolean useDicts)
+      throws JSONException, IOException {
+    return new JsonStreamDecoder(reader, useDicts).decode();
   }
 
   /**
@@ -497,5 +529,22 @@ public class JsonUtil {
       throw new IllegalArgumentException("jsonObject is not a legal JSON object");
     }
   }
+
+  /**
+   * Encodes the given JSON object straight into {@code out}.
+   *
+   * @param jsonObject the JSON object to encode
+   * @param out the sink to write the encoded text to
+   * @throws IllegalArgumentException if the JSON object can't be encoded
+   * @throws IOException if writing to {@code out} fails
+   */
+  public static void encodeJsonObject(Object jsonObject, Appendable out)
+      throws IllegalArgumentException, IOException {
+    try {
+      writeJsonRepresentation(jsonObject, out);
+    } catch (JSONException e) {
+      throw new IllegalArgumentException("jsonObject is not a legal JSON object");
+    }
+  }
 }
 
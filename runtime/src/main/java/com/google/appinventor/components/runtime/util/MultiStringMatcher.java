@@ -0,0 +1,138 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An Aho-Corasick automaton that finds the occurrences of several keys in a text in a single
+ * pass over the text.
+ *
+ * Instances are immutable once constructed, so they can be shared between threads and reused for
+ * any number of texts.
+ */
+final class MultiStringMatcher {
+
+  /**
+   * Receives the occurrences found by {@link #match(String, MatchHandler)}.
+   */
+  interface MatchHandler {
+    /**
+     * Called for each occurrence of a key, in ascending order of {@code end}. Occurrences that end
+     * at the same position are reported longest key first.
+     *
+     * @param key  the index of the key in the list the matcher was built from
+     * @param end  the index just after the last character of the occurrence
+     */
+    void onMatch(int key, int end);
+  }
+
+  private static final class Node {
+    private char[] labels = new char[0];
+    private Node[] children = new Node[0];
+
+    /** The node for the longest proper suffix of this node's string that is in the trie. */
+    private Node fail;
+
+    /** The nearest node along the fail links that ends a key, or null. */
+    private Node output;
+
+    /** The index of the key ending at this node, or -1. */
+    private int key = -1;
+
+    private Node child(char c) {
+      int i = Arrays.binarySearch(labels, c);
+      return i >= 0 ? children[i] : null;
+    }
+
+    private Node addChild(char c) {
+      int i = Arrays.binarySearch(labels, c);
+      if (i >= 0) {
+        return children[i];
+      }
+      // Keep the labels sorted, so that they can be searched.
+      i = -i - 1;
+      Node child = new Node();
+      char[] newLabels = new char[labels.length + 1];
+      Node[] newChildren = new Node[children.length + 1];
+      System.arraycopy(labels, 0, newLabels, 0, i);
+      System.arraycopy(children, 0, newChildren, 0, i);
+      newLabels[i] = c;
+      newChildren[i] = child;
+      System.arraycopy(labels, i, newLabels, i + 1, labels.length - i);
+      System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+      labels = newLabels;
+      children = newChildren;
+      return child;
+    }
+  }
+
+  private final Node root = new Node();
+
+  /**
+   * Builds the automaton for the given keys.
+   *
+   * @param keys  distinct, non-empty keys
+   */
+  MultiStringMatcher(List<String> keys) {
+    for (int k = 0; k < keys.size(); k++) {
+      String key = keys.get(k);
+      if (key.isEmpty()) {
+        throw new IllegalArgumentException("Keys must not be empty");
+      }
+      Node node = root;
+      for (int i = 0; i < key.length(); i++) {
+        node = node.addChild(key.charAt(i));
+      }
+      node.key = k;
+    }
+
+    // Link the nodes breadth first, so that the fail link of a node is always set before the
+    // fail links of its children are computed.
+    ArrayDeque<Node> queue = new ArrayDeque<Node>();
+    for (Node child : root.children) {
+      child.fail = root;
+      queue.add(child);
+    }
+    while (!queue.isEmpty()) {
+      Node node = queue.remove();
+      for (int i = 0; i < node.children.length; i++) {
+        char c = node.labels[i];
+        Node child = node.children[i];
+        Node fail = node.fail;
+        while (fail != root && fail.child(c) == null) {
+          fail = fail.fail;
+        }
+        Node target = fail.child(c);
+        child.fail = target != null ? target : root;
+        child.output = child.fail.key >= 0 ? child.fail : child.fail.output;
+        queue.add(child);
+      }
+    }
+  }
+
+  /**
+   * Reports every occurrence of every key in {@code text} to {@code handler}, including
+   * occurrences that overlap.
+   */
+  void match(String text, MatchHandler handler) {
+    Node state = root;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      Node next = state.child(c);
+      while (next == null && state != root) {
+        state = state.fail;
+        next = state.child(c);
+      }
+      state = next != null ? next : root;
+
+      for (Node node = state.key >= 0 ? state : state.output; node != null; node = node.output) {
+        handler.onMatch(node.key, i + 1);
+      }
+    }
+  }
+}
@@ -10,6 +10,7 @@ import com.google.appinventor.components.runtime.errors.YailRuntimeError;
 import gnu.lists.LList;
 import gnu.lists.Pair;
 import gnu.math.IntNum;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -112,10 +113,11 @@ public class YailList extends Pair implements YailObject {
    */
 
   public String[] toStringArray() {
-    int size = this.size();
-    String[] objects = new String[size];
-    for (int i = 1; i <= size; i++) {
-      objects[i - 1] = YailListElementToString(get(i));
+    // A single pass over the pairs, rather than walking from the head for every index.
+    Object[] items = toArray();
+    String[] objects = new String[items.length];
+    for (int i = 0; i < items.length; i++) {
+      objects[i] = YailListElementToString(items[i]);
     }
     return objects;
   }
@@ -146,20 +148,31 @@ public class YailList extends Pair implements YailObject {
    * Boolean, YailList, FString and arrays containing these types.
    */
   public String toJSONString() {
+    StringBuilder json = new StringBuilder();
+    try {
+      writeJSONString(json);
+    } catch (IOException e) {
+      // A StringBuilder doesn't throw.
+      throw new YailRuntimeError("List failed to convert to JSON.", "JSON Creation Error.");
+    }
+    return json.toString();
+  }
+
+  /**
+   * Write the JSON text representation of this YailList, as returned
+   * by {@link #toJSONString()}, to the given sink.
+   */
+  public void writeJSONString(Appendable out) throws IOException {
     try {
-      StringBuilder json = new StringBuilder();
       String separator = "";
-      json.append('[');
-      int size = this.size();
-      for (int i = 1; i <= size; i++) {
-        Object value = get(i);
-        json.append(separator).append(JsonUtil.getJsonRepresentation(value));
+      out.append('[');
+      // Walk the pairs instead of calling get(i), which starts from the head every time.
+      for (Object pair = cdr; pair instanceof Pair; pair = ((Pair) pair).getCdr()) {
+        out.append(separator);
+        JsonUtil.writeJsonRepresentation(((Pair) pair).getCar(), out);
         separator = ",";
       }
-      json.append(']');
-
-      return json.toString();
-
+      out.append(']');
     } catch (JSONException e) {
       throw new YailRuntimeError("List failed to convert to JSON.", "JSON Creation Error.");
     }
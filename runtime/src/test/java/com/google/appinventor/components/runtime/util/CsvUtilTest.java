@@ -0,0 +1,261 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link CsvUtil}: the quoting rules of the writer, round trips
+ * through the parser, and the streaming API on tables too large to be held
+ * in memory.
+ */
+public class CsvUtilTest {
+
+  @Test
+  public void testFieldsAreQuotedOnlyWhenNeeded() {
+    assertEquals("a,b c,1.5", CsvUtil.toCsvRow(row("a", "b c", "1.5")));
+    assertEquals("\"a,b\",\"say \"\"hi\"\"\",\"x\ny\",\"x\ry\"",
+        CsvUtil.toCsvRow(row("a,b", "say \"hi\"", "x\ny", "x\ry")));
+  }
+
+  @Test
+  public void testEmptyLastFieldIsQuoted() {
+    assertEquals("\"\"", CsvUtil.toCsvRow(row("")));
+    assertEquals("a,\"\"", CsvUtil.toCsvRow(row("a", "")));
+    assertEquals(",\"\"", CsvUtil.toCsvRow(row("", "")));
+    assertEquals(",b", CsvUtil.toCsvRow(row("", "b")));
+    assertEquals("a,,b", CsvUtil.toCsvRow(row("a", "", "b")));
+  }
+
+  @Test
+  public void testRowsWithEmptyFieldsRoundTrip() throws Exception {
+    String[][] rows = {
+        {""}, {"a", ""}, {"", ""}, {"", "b"}, {"a", "", "b"}, {"", "", ""}};
+    for (String[] fields : rows) {
+      assertRowRoundTrips(Arrays.asList(fields));
+    }
+    assertTableRoundTrips(Arrays.asList(rows));
+  }
+
+  @Test
+  public void testRandomTablesRoundTrip() throws Exception {
+    // The parser trims cells, so no generated field starts or ends with
+    // whitespace.
+    String alphabet = "ab ,\"\n\r\t1";
+    Random random = new Random(24);
+    for (int n = 0; n < 1000; n++) {
+      List<String[]> rows = new ArrayList<String[]>();
+      int rowCount = 1 + random.nextInt(4);
+      int fieldCount = 1 + random.nextInt(4);
+      for (int r = 0; r < rowCount; r++) {
+        String[] fields = new String[fieldCount];
+        for (int f = 0; f < fieldCount; f++) {
+          StringBuilder field = new StringBuilder();
+          int length = random.nextInt(6);
+          for (int i = 0; i < length; i++) {
+            field.append(alphabet.charAt(random.nextInt(alphabet.length())));
+          }
+          fields[f] = field.toString().trim();
+        }
+        rows.add(fields);
+        assertRowRoundTrips(Arrays.asList(fields));
+      }
+      assertTableRoundTrips(rows);
+    }
+  }
+
+  @Test
+  public void testWriteCsvTable() throws Exception {
+    StringWriter out = new StringWriter();
+    CsvUtil.writeCsvTable(YailList.makeList(Arrays.asList(row("a", "b"), row("c", ""))), out);
+    assertEquals("a,b\r\nc,\"\"\r\n", out.toString());
+  }
+
+  @Test
+  public void testReadCsvTable() throws Exception {
+    final List<List<String>> rows = new ArrayList<List<String>>();
+    CsvUtil.readCsvTable(new StringReader("a,b\r\n\"c,d\",\"\"\r\ne,f"), new CsvUtil.RowHandler() {
+      @Override
+      public void onRow(YailList row) {
+        rows.add(strings(row));
+      }
+    });
+    assertEquals(Arrays.asList(
+        Arrays.asList("a", "b"), Arrays.asList("c,d", ""), Arrays.asList("e", "f")), rows);
+  }
+
+  @Test
+  public void testReadCsvTableReportsSyntaxErrors() {
+    try {
+      CsvUtil.readCsvTable(new StringReader("a,b\r\n\"c,d\r\n"), new CsvUtil.RowHandler() {
+        @Override
+        public void onRow(YailList row) {
+        }
+      });
+      fail("An unclosed quoted cell was accepted.");
+    } catch (Exception e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("unclosed quoted cell"));
+    }
+  }
+
+  @Test
+  public void testChunkedReader() throws Exception {
+    StringBuilder table = new StringBuilder();
+    for (int i = 0; i < 25; i++) {
+      table.append(i).append(",\"row ").append(i).append("\"\r\n");
+    }
+    CsvUtil.ChunkedReader reader = new CsvUtil.ChunkedReader(new StringReader(table.toString()));
+    int[] chunkSizes = new int[4];
+    for (int i = 0; i < chunkSizes.length; i++) {
+      YailList chunk = reader.nextChunk(10);
+      chunkSizes[i] = chunk.size();
+      if (chunk.size() > 0) {
+        assertEquals(Arrays.asList(String.valueOf(i * 10), "row " + i * 10),
+            strings((YailList) chunk.getObject(0)));
+      }
+    }
+    reader.close();
+    assertEquals("[10, 10, 5, 0]", Arrays.toString(chunkSizes));
+  }
+
+  /**
+   * Streams 100 MB of CSV through {@link CsvUtil#readCsvTable} and
+   * {@link CsvUtil.ChunkedReader}, and checks that the heap in use stays
+   * far below the size of the table, i.e., that it is not buffered.
+   */
+  @Test
+  public void testLargeTablesAreStreamed() throws Exception {
+    final long size = 100L * 1024 * 1024;
+    final long baseline = usedHeap();
+    final long[] maxUsed = {0};
+    final int[] rows = {0};
+    CsvUtil.readCsvTable(new GeneratedTableReader(size), new CsvUtil.RowHandler() {
+      @Override
+      public void onRow(YailList row) {
+        assertEquals(4, row.size());
+        if (++rows[0] % 250000 == 0) {
+          maxUsed[0] = Math.max(maxUsed[0], usedHeap() - baseline);
+        }
+      }
+    });
+    assertEquals(GeneratedTableReader.rowCount(size), rows[0]);
+    assertTrue("Heap grew by " + maxUsed[0] + " bytes.", maxUsed[0] < 16 * 1024 * 1024);
+
+    CsvUtil.ChunkedReader reader = new CsvUtil.ChunkedReader(new GeneratedTableReader(size));
+    int chunkedRows = 0;
+    long chunkedMaxUsed = 0;
+    for (YailList chunk = reader.nextChunk(10000); chunk.size() > 0;
+        chunk = reader.nextChunk(10000)) {
+      chunkedRows += chunk.size();
+      if (chunkedRows % 250000 == 0) {
+        chunkedMaxUsed = Math.max(chunkedMaxUsed, usedHeap() - baseline);
+      }
+    }
+    reader.close();
+    assertEquals(rows[0], chunkedRows);
+    assertTrue("Heap grew by " + chunkedMaxUsed + " bytes.", chunkedMaxUsed < 32 * 1024 * 1024);
+  }
+
+  /**
+   * Generates a CSV table of {@code size} chars, without holding it in memory.
+   * Every row is {@link #ROW_LENGTH} chars long.
+   */
+  private static class GeneratedTableReader extends Reader {
+    private static final int ROW_LENGTH = 64;
+
+    private final long size;
+    private long position;
+    private final StringBuilder row = new StringBuilder(ROW_LENGTH);
+    private int rowPosition = ROW_LENGTH;
+
+    GeneratedTableReader(long size) {
+      this.size = size;
+    }
+
+    static int rowCount(long size) {
+      return (int) ((size + ROW_LENGTH - 1) / ROW_LENGTH);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      if (position == size) {
+        return -1;
+      }
+      int n = 0;
+      while (n < len && position < size) {
+        if (rowPosition == ROW_LENGTH) {
+          long index = position / ROW_LENGTH;
+          row.setLength(0);
+          row.append(index).append(",name ").append(index).append(",\"quoted, \"\"cell\"\"\",");
+          while (row.length() < ROW_LENGTH - 2) {
+            row.append('x');
+          }
+          row.append("\r\n");
+          rowPosition = 0;
+        }
+        cbuf[off + n++] = row.charAt(rowPosition++);
+        position++;
+      }
+      return n;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static void assertRowRoundTrips(List<String> fields) throws Exception {
+    String csv = CsvUtil.toCsvRow(row(fields.toArray(new String[0])));
+    assertEquals(csv, fields, strings(CsvUtil.fromCsvRow(csv)));
+  }
+
+  private static void assertTableRoundTrips(List<String[]> rows) throws Exception {
+    List<YailList> table = new ArrayList<YailList>();
+    List<List<String>> expected = new ArrayList<List<String>>();
+    for (String[] fields : rows) {
+      table.add(row(fields));
+      expected.add(Arrays.asList(fields));
+    }
+    String csv = CsvUtil.toCsvTable(YailList.makeList(table));
+    List<List<String>> actual = new ArrayList<List<String>>();
+    for (Object parsedRow : CsvUtil.fromCsvTable(csv).toArray()) {
+      actual.add(strings((YailList) parsedRow));
+    }
+    assertEquals(csv, expected, actual);
+  }
+
+  private static YailList row(String... fields) {
+    return YailList.makeList(Arrays.asList(fields));
+  }
+
+  private static List<String> strings(YailList row) {
+    List<String> strings = new ArrayList<String>();
+    for (Object field : row.toArray()) {
+      strings.add(field.toString());
+    }
+    return strings;
+  }
+}
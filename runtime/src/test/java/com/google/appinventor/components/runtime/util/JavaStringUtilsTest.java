@@ -0,0 +1,194 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2017-2020  MIT, All rights reserve
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Tests for the replaceAllMappings methods of {@link JavaStringUtils}, which apply the mappings
+ * with a {@link MultiStringMatcher}, against the implementation they replaced, which found the
+ * occurrences of each key with a regex and replaced them range by range.
+ */
+public class JavaStringUtilsTest {
+
+  private static final int DICTIONARY = 0;
+  private static final int LONGEST_STRING_FIRST = 1;
+  private static final int EARLIEST_OCCURRENCE = 2;
+
+  @Test
+  public void testExamples() {
+    Map<Object, Object> mappings = mappings("a", "1", "ab", "2", "b", "3");
+    assertEquals("133", JavaStringUtils.replaceAllMappingsDictionaryOrder("abb", mappings));
+    assertEquals("23", JavaStringUtils.replaceAllMappingsLongestStringOrder("abb", mappings));
+    assertEquals("x2", JavaStringUtils.replaceAllMappingsEarliestOccurrenceOrder("xab", mappings));
+    // Occurrences of the same key don't overlap.
+    assertEquals("-a", JavaStringUtils.replaceAllMappingsDictionaryOrder("aaa", mappings("aa", "-")));
+    // Keys and values are converted to strings.
+    Map<Object, Object> numbers = new LinkedHashMap<Object, Object>();
+    numbers.put(1, 2.5);
+    assertEquals("2.5+2.5", JavaStringUtils.replaceAllMappingsDictionaryOrder("1+1", numbers));
+  }
+
+  @Test
+  public void testEmptyKeyUsesRangeBasedFallback() {
+    assertEquals("-a-b-c-",
+        JavaStringUtils.replaceAllMappingsDictionaryOrder("abc", mappings("", "-")));
+    // The range set keeps one range per end index, so the empty occurrence at the end of "a" is
+    // dropped once "a" is replaced. The fallback keeps this quirk of the old implementation.
+    assertEquals("-1", JavaStringUtils.replaceAllMappingsLongestStringOrder("a",
+        mappings("", "-", "a", "1")));
+    assertEquals("-1", JavaStringUtils.replaceAllMappingsEarliestOccurrenceOrder("a",
+        mappings("", "-", "a", "1")));
+  }
+
+  @Test
+  public void testRandomMappingsMatchRangeBasedImplementation() {
+    Random random = new Random(25);
+    for (int n = 0; n < 100000; n++) {
+      int alphabet = 2 + random.nextInt(3);
+      String text = randomString(random, alphabet, random.nextInt(30));
+
+      Map<Object, Object> mappings = new LinkedHashMap<Object, Object>();
+      int keyCount = 1 + random.nextInt(5);
+      for (int i = 0; i < keyCount; i++) {
+        // Every 50th set of mappings has keys that may be empty, which take the fallback path.
+        String key = randomString(random, alphabet, (n % 50 == 0 ? 0 : 1) + random.nextInt(4));
+        mappings.put(key, "<" + i + ">");
+      }
+
+      String message = text + " " + mappings;
+      assertEquals(message, referenceReplaceAllMappings(text, mappings, DICTIONARY),
+          JavaStringUtils.replaceAllMappingsDictionaryOrder(text, mappings));
+      assertEquals(message, referenceReplaceAllMappings(text, mappings, LONGEST_STRING_FIRST),
+          JavaStringUtils.replaceAllMappingsLongestStringOrder(text, mappings));
+      assertEquals(message, referenceReplaceAllMappings(text, mappings, EARLIEST_OCCURRENCE),
+          JavaStringUtils.replaceAllMappingsEarliestOccurrenceOrder(text, mappings));
+    }
+  }
+
+  @Test
+  public void testMatcherCacheIsLeastRecentlyUsed() {
+    List<String> first = Arrays.asList("cache-test", "first");
+    List<String> second = Arrays.asList("cache-test", "second");
+    MultiStringMatcher firstMatcher = JavaStringUtils.getMatcher(first);
+    MultiStringMatcher secondMatcher = JavaStringUtils.getMatcher(second);
+    // Equal key lists share the matcher.
+    assertSame(firstMatcher, JavaStringUtils.getMatcher(Arrays.asList("cache-test", "first")));
+
+    // Fill the rest of the cache, using the first list in between so that it stays recent.
+    for (int i = 0; i < JavaStringUtils.MATCHER_CACHE_SIZE - 1; i++) {
+      JavaStringUtils.getMatcher(Arrays.asList("cache-test", "filler " + i));
+      assertSame(firstMatcher, JavaStringUtils.getMatcher(first));
+    }
+
+    assertSame(firstMatcher, JavaStringUtils.getMatcher(first));
+    assertNotSame(secondMatcher, JavaStringUtils.getMatcher(second));
+  }
+
+  private static String randomString(Random random, int alphabet, int length) {
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append((char) ('a' + random.nextInt(alphabet)));
+    }
+    return sb.toString();
+  }
+
+  private static Map<Object, Object> mappings(String... keysAndValues) {
+    Map<Object, Object> mappings = new LinkedHashMap<Object, Object>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      mappings.put(keysAndValues[i], keysAndValues[i + 1]);
+    }
+    return mappings;
+  }
+
+  /**
+   * The implementation of replaceAllMappings before {@link MultiStringMatcher}: orders the keys,
+   * then finds the occurrences of each key with a regex, and keeps those that don't overlap an
+   * occurrence already kept. The kept occurrences are replaced from the end of the text.
+   */
+  private static String referenceReplaceAllMappings(String text, Map<Object, Object> mappings,
+      int order) {
+    final Map<String, String> stringMappings = new HashMap<String, String>();
+    List<String> keys = new ArrayList<String>();
+    for (Map.Entry<Object, Object> entry : mappings.entrySet()) {
+      String key = entry.getKey().toString();
+      if (!stringMappings.containsKey(key)) {
+        keys.add(key);
+      }
+      stringMappings.put(key, entry.getValue().toString());
+    }
+
+    if (order == LONGEST_STRING_FIRST) {
+      Collections.sort(keys, new Comparator<String>() {
+        @Override
+        public int compare(String s, String t1) {
+          return Integer.compare(t1.length(), s.length());
+        }
+      });
+    } else if (order == EARLIEST_OCCURRENCE) {
+      final Map<String, Integer> occurrenceIndices = new HashMap<String, Integer>();
+      for (String key : keys) {
+        int firstIndex = text.indexOf(key);
+        if (firstIndex == -1) {
+          firstIndex = text.length() + occurrenceIndices.size();
+        }
+        occurrenceIndices.put(key, firstIndex);
+      }
+      Collections.sort(keys, new Comparator<String>() {
+        @Override
+        public int compare(String s, String t1) {
+          int id1 = occurrenceIndices.get(s);
+          int id2 = occurrenceIndices.get(t1);
+          if (id1 == id2) {
+            return Integer.compare(t1.length(), s.length());
+          } else {
+            return Integer.compare(id1, id2);
+          }
+        }
+      });
+    }
+
+    // Ranges are {start, end, index of the key}. Overlapping ranges compare equal, so a range
+    // overlapping one already in the set isn't added.
+    TreeSet<int[]> ranges = new TreeSet<int[]>(new Comparator<int[]>() {
+      @Override
+      public int compare(int[] r1, int[] r2) {
+        if (Math.max(r1[0], r2[0]) < Math.min(r1[1], r2[1])) {
+          return 0;
+        }
+        return Integer.compare(r2[1], r1[1]);
+      }
+    });
+    for (int k = 0; k < keys.size(); k++) {
+      Matcher matcher = Pattern.compile(Pattern.quote(keys.get(k))).matcher(text);
+      while (matcher.find()) {
+        ranges.add(new int[] {matcher.start(), matcher.end(), k});
+      }
+    }
+    for (int[] range : ranges) {
+      text = text.substring(0, range[0]) + stringMappings.get(keys.get(range[2]))
+          + text.substring(range[1]);
+    }
+    return text;
+  }
+}
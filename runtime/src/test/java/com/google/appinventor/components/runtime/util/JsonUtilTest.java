@@ -0,0 +1,313 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2011-2020 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.Test;
+
+/**
+ * Checks that {@link JsonUtil#getObjectFromJson(String, boolean)}, which decodes with
+ * {@link JsonStreamDecoder}, returns the same values as the org.json tree converted with
+ * {@link JsonUtil#convertJsonItem(Object, boolean)} that it replaced, and fails on the same
+ * inputs. The tests must run against Android's org.json, whose lenient grammar the decoder follows.
+ */
+public class JsonUtilTest {
+
+  private static final String[] INPUTS = {
+      // Plain values, at the top level and nested.
+      "42", "-7", "1.5", "1e3", "12345678901", "123456789012345678901234567890", "0x1F", "017",
+      "true", "FALSE", "null", "\"text\"", "\"true\"", "'single'", "unquoted",
+      "[]", "{}", "[1, 2.5, \"a\", true, false]", "{\"b\": 1, \"a\": 2, \"c\": {\"z\": [], \"y\": {}}}",
+      "[[1, [2, [3]]], {\"a\": [{\"b\": [4]}]}]",
+      // Strings "true" and "false" become Booleans when nested, but not at the top level.
+      "[\"true\", \"False\", \"TRUE \", \"yes\"]", "{\"a\": \"true\", \"b\": \"false\"}",
+      // Nested nulls become "null", and so do unquoted ones in any case.
+      "[null, NULL, {\"a\": null}]", "{\"a\": [null]}",
+      // Escapes.
+      "\"a\\\"b\\\\c\\/d\\b\\f\\n\\r\\t\\u00e9\\u2603\"", "[\"\\x\", 'it\\'s']",
+      // Comments.
+      "/* comment */ [1, // to the end of the line\n 2, # also to the end of the line\n 3]",
+      "{\"a\" /* between */ : 1}", "[1 /* unterminated",
+      // Lenient separators.
+      "{\"a\" = 1; \"b\" => 2, c: 3}", "[1; 2, 3]",
+      // Missing values.
+      "[1,]", "[,1]", "[1,,2]", "[;]",
+      // Numbers that are not finite are allowed in arrays but not in objects.
+      "[NaN, Infinity, -Infinity]", "{\"a\": NaN}", "{\"a\": Infinity}",
+      // Duplicate keys keep the last value, even if an earlier one could not be converted.
+      "{\"a\": 1, \"a\": 2}", "{\"a\": [1,], \"a\": 2}", "{\"a\": [[,]], \"a\": 2, \"b\": [1,]}",
+      // Anything after the first value is ignored.
+      "[1] [2]", "{\"a\": 1} trailing",
+      // Malformed input.
+      "[", "{", "{\"a\"", "{\"a\":", "{\"a\": 1", "[1 2]", "{\"a\" 1}", "{1: 2}", "{null: 2}",
+      "{[]: 2}", "\"unterminated", "\"\\u12\"", "]", "}", ":", "  ", "/* */",
+  };
+
+  @Test
+  public void testMatchesOrgJsonConversion() throws Exception {
+    for (String input : INPUTS) {
+      assertSameResult(input);
+    }
+  }
+
+  @Test
+  public void testRandomDocumentsMatchOrgJsonConversion() throws Exception {
+    Random random = new Random(21);
+    for (int i = 0; i < 2000; i++) {
+      StringBuilder sb = new StringBuilder();
+      appendRandomValue(random, 4, sb);
+      assertSameResult(sb.toString());
+    }
+  }
+
+  /** Values larger than the buffer of the decoder are read in several chunks. */
+  @Test
+  public void testLargeDocumentMatchesOrgJsonConversion() throws Exception {
+    Random random = new Random(8192);
+    StringBuilder sb = new StringBuilder("[");
+    while (sb.length() < 100000) {
+      appendRandomValue(random, 3, sb);
+      sb.append(", \"").append(new String(new char[random.nextInt(9000)]).replace('\0', 'x'))
+          .append("\",");
+    }
+    sb.append("0]");
+    assertSameResult(sb.toString());
+  }
+
+  @Test
+  public void testEmptyStringDecodesToEmptyString() throws Exception {
+    assertEquals("", JsonUtil.getObjectFromJson("", true));
+    assertEquals("", JsonUtil.getObjectFromJson((String) null, false));
+  }
+
+  /** Android's JSONTokener threw a NumberFormatException here, which callers didn't expect. */
+  @Test(expected = JSONException.class)
+  public void testInvalidUnicodeEscapeIsJsonException() throws Exception {
+    JsonUtil.getObjectFromJson("\"\\u12G4\"", true);
+  }
+
+  @Test
+  public void testShapes() throws Exception {
+    String json = "{\"b\": [1, {\"c\": 2}], \"a\": \"x\"}";
+    assertEquals("Dict{a=String(x), b=YailList[Integer(1), Dict{c=Integer(2)}]}",
+        describe(JsonUtil.getObjectFromJson(json, true)));
+    assertEquals("List[List[String(a), String(x)], "
+            + "List[String(b), List[Integer(1), List[List[String(c), Integer(2)]]]]]",
+        describe(JsonUtil.getObjectFromJson(json, false)));
+    // Top-level arrays stay plain lists, even with dictionaries.
+    assertEquals("List[YailList[Integer(1)]]",
+        describe(JsonUtil.getObjectFromJson("[[1]]", true)));
+  }
+
+  private static void assertSameResult(String json) throws IOException {
+    for (boolean useDicts : new boolean[] {false, true}) {
+      String expected = describeResultOfOrgJson(json, useDicts);
+      String message = json + ", useDicts=" + useDicts;
+      assertEquals(message, expected, describeResultOfDecoder(json, useDicts));
+      assertEquals(message, expected, describeResultOfReader(json, useDicts));
+    }
+  }
+
+  private static String describeResultOfOrgJson(String json, boolean useDicts) {
+    try {
+      return describe(getObjectFromJsonWithOrgJson(json, useDicts));
+    } catch (JSONException e) {
+      return "JSONException";
+    } catch (NumberFormatException e) {
+      // An invalid unicode escape, see testInvalidUnicodeEscapeIsJsonException.
+      return "JSONException";
+    }
+  }
+
+  private static String describeResultOfDecoder(String json, boolean useDicts) {
+    try {
+      return describe(JsonUtil.getObjectFromJson(json, useDicts));
+    } catch (JSONException e) {
+      return "JSONException";
+    }
+  }
+
+  /** Decodes {@code json} through a reader that returns at most 3 characters at a time. */
+  private static String describeResultOfReader(String json, boolean useDicts)
+      throws IOException {
+    if (json.isEmpty()) {
+      return describeResultOfDecoder(json, useDicts);
+    }
+    try {
+      return describe(JsonUtil.getObjectFromJson(new TrickleReader(json), useDicts));
+    } catch (JSONException e) {
+      return "JSONException";
+    }
+  }
+
+  /**
+   * The implementation of getObjectFromJson before {@link JsonStreamDecoder}: builds an org.json
+   * tree with {@link JSONTokener}, then converts it.
+   */
+  private static Object getObjectFromJsonWithOrgJson(String jsonString, boolean useDicts)
+      throws JSONException {
+    if ((jsonString == null) || jsonString.equals("")) {
+      return "";
+    } else {
+      final Object value = (new JSONTokener(jsonString)).nextValue();
+      if (value == null || value.equals(JSONObject.NULL)) {
+        return null;
+      } else if ((value instanceof String) ||
+          (value instanceof Number) ||
+          (value instanceof Boolean)) {
+        return value;
+      } else if (value instanceof JSONArray) {
+        return JsonUtil.getListFromJsonArray((JSONArray) value, useDicts);
+      } else if (value instanceof JSONObject) {
+        if (useDicts) {
+          return JsonUtil.getDictionaryFromJsonObject((JSONObject) value);
+        } else {
+          return JsonUtil.getListFromJsonObject((JSONObject) value);
+        }
+      }
+      throw new JSONException("Invalid JSON string.");
+    }
+  }
+
+  /** Describes a decoded value, including the types of all the values nested in it. */
+  private static String describe(Object value) {
+    if (value == null) {
+      return "null";
+    }
+    StringBuilder sb = new StringBuilder();
+    if (value instanceof YailDictionary) {
+      sb.append("Dict{");
+      String separator = "";
+      for (Object entry : ((YailDictionary) value).entrySet()) {
+        Map.Entry<?, ?> e = (Map.Entry<?, ?>) entry;
+        sb.append(separator).append(e.getKey()).append('=').append(describe(e.getValue()));
+        separator = ", ";
+      }
+      return sb.append('}').toString();
+    }
+    if (value instanceof YailList) {
+      sb.append("YailList[");
+      String separator = "";
+      for (Object item : ((YailList) value).toArray()) {
+        sb.append(separator).append(describe(item));
+        separator = ", ";
+      }
+      return sb.append(']').toString();
+    }
+    if (value instanceof List) {
+      sb.append("List[");
+      String separator = "";
+      for (Object item : (List<?>) value) {
+        sb.append(separator).append(describe(item));
+        separator = ", ";
+      }
+      return sb.append(']').toString();
+    }
+    return value.getClass().getSimpleName() + "(" + value + ")";
+  }
+
+  private static void appendRandomValue(Random random, int depth, StringBuilder sb) {
+    String[] whitespace = {"", " ", "\n", "/* c */", "# c\n", "// c\n"};
+    sb.append(whitespace[random.nextInt(whitespace.length)]);
+    int kind = random.nextInt(depth > 0 ? 12 : 9);
+    switch (kind) {
+      case 0:
+        sb.append(random.nextInt(2000) - 1000);
+        break;
+      case 1:
+        sb.append(random.nextDouble() * 1000);
+        break;
+      case 2:
+        sb.append(random.nextBoolean() ? "true" : "False");
+        break;
+      case 3:
+        sb.append(random.nextBoolean() ? "null" : "NaN");
+        break;
+      case 4:
+        sb.append(random.nextBoolean() ? "\"true\"" : "\"false\"");
+        break;
+      case 5:
+        sb.append("\"s").append(random.nextInt(100)).append("\\n\\u00e9\"");
+        break;
+      case 6:
+        sb.append("'q").append(random.nextInt(100)).append('\'');
+        break;
+      case 7:
+        sb.append("word").append(random.nextInt(100));
+        break;
+      case 8:
+        sb.append(random.nextBoolean() ? "0x" + Integer.toHexString(random.nextInt(4096))
+            : String.valueOf(random.nextLong()));
+        break;
+      case 9:
+      case 10: {
+        sb.append('[');
+        int n = random.nextInt(4);
+        for (int i = 0; i < n; i++) {
+          if (i > 0) {
+            sb.append(random.nextInt(10) == 0 ? ";" : ",");
+          }
+          appendRandomValue(random, depth - 1, sb);
+        }
+        if (n > 0 && random.nextInt(20) == 0) {
+          sb.append(',');
+        }
+        sb.append(']');
+        break;
+      }
+      default: {
+        sb.append('{');
+        int n = random.nextInt(4);
+        for (int i = 0; i < n; i++) {
+          if (i > 0) {
+            sb.append(random.nextInt(10) == 0 ? ";" : ",");
+          }
+          char quote = random.nextBoolean() ? '"' : '\'';
+          sb.append(quote).append('k').append(random.nextInt(5)).append(quote);
+          String[] separators = {":", " : ", "=", "=>"};
+          sb.append(separators[random.nextInt(separators.length)]);
+          appendRandomValue(random, depth - 1, sb);
+        }
+        sb.append('}');
+      }
+    }
+    // Occasionally break the document.
+    if (random.nextInt(200) == 0) {
+      sb.setLength(random.nextInt(sb.length() + 1));
+    }
+  }
+
+  /** Returns the characters of a string a few at a time, like a slow network stream. */
+  private static class TrickleReader extends Reader {
+    private final StringReader in;
+
+    TrickleReader(String s) {
+      in = new StringReader(s);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      return in.read(cbuf, off, Math.min(len, 3));
+    }
+
+    @Override
+    public void close() {
+      in.close();
+    }
+  }
+}